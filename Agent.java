@@ -1,232 +1,429 @@
-import java.util.*;
-
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+//======================================================================
+//* An agent of the simulation.  Its state is a record in the
+//* simulation's AgentStore, off the Java heap; an Agent is a flyweight
+//* that knows which record is its own, together with the agent's
+//* random stream.  The diseases it has and carries are DiseaseSets,
+//* bitsets of ids in the simulation's DiseaseRegistry.
+//======================================================================
 public class Agent {
-    private String immuneSystem;
-    private final HashSet<Disease> infectedWith = new HashSet<>();
-    private final HashSet<Disease> carrying = new HashSet<>();
-
-    private final String id;   // identifier for the agent
-    private int row;
-    private int col;
-    private final int vision;
-    private double metabolicRate;
-    private double wealth;
-    private double lastCollectedResources;
-    private final PriorityQueue<Event> eventList = new PriorityQueue<>();
-
-    public Agent(String id, int vision, double metabolicRate, double initialWealth, double maxAge, double birthTime, String immuneSystem) {
+    private final AgentStore store;
+    private final ByteBuffer record;  // the chunk of the store holding this agent's record, at base
+    private final int base;
+    private final Genome immuneSystem;    // views of the immune genome and cache in the record
+    private final ImmunityCache immunity;
+    private final DiseaseSet infected;   // diseases this agent suffers from
+    private final DiseaseSet carrying;   // diseases this agent is immune to but can pass on
+    private final RandomStream random;  // this agent's own stream, split from the simulation's
+    private final Census census;         // told whenever this agent catches or clears a disease
+
+    private final int id;   // handle of the agent in the AgentRegistry, and of its store record
+    private final int generation;  // generation of the handle, stamped on this agent's events
+
+    // Offsets to the four cells an agent can see along: south, north, east, west
+    private static final int[] ROW_STEP = {1, -1, 0, 0};
+    private static final int[] COL_STEP = {0, 0, 1, -1};
+
+    public Agent(AgentStore store, int id, int generation, int vision, double metabolicRate, double initialWealth,
+                 double maxAge, double birthTime, Genome immuneSystem, RandomStream random, Census census) {
+        if (immuneSystem.length() > store.getMaxImmuneLength()) {
+            throw new IllegalArgumentException("Immune genomes of " + immuneSystem.length()
+                    + " bits do not fit a store made for " + store.getMaxImmuneLength() + "; raise -DmaxImmuneLength");
+        }
+        this.store = store;
         this.id = id;
-        this.vision = vision;
-        this.metabolicRate = metabolicRate;
-        this.wealth = 0;
-        this.wealth = initialWealth;
-        this.lastCollectedResources = birthTime;
-        this.immuneSystem = immuneSystem;
+        this.generation = generation;
+        this.random = random;
+        this.census = census;
+
+        store.allocate(id);
+        this.record = store.chunkOf(id);
+        this.base = store.base(id);
+        record.putInt(base + AgentStore.VISION, vision);
+        record.putDouble(base + AgentStore.METABOLIC_RATE, metabolicRate);
+        record.putDouble(base + AgentStore.WEALTH, initialWealth);
+        record.putDouble(base + AgentStore.LAST_COLLECTED, birthTime);
+        record.putInt(base + AgentStore.IMMUNE_LENGTH, immuneSystem.length());
+        this.immuneSystem = new StoredGenome(store, id);
+        this.immuneSystem.copyFrom(immuneSystem);
+        this.immunity = new ImmunityCache(store, id);
+        this.immunity.clear();
+        int maskWords = store.getDiseases().maskWords();
+        this.infected = new DiseaseSet(record, base + store.infectedSet(), maskWords);
+        this.carrying = new DiseaseSet(record, base + store.carryingSet(), maskWords);
 
         // Schedule death
-        eventList.add(new Event(birthTime + maxAge, "death", id));
+        for (EventKind kind : EventKind.VALUES) {
+            clearPending(kind);
+        }
+        record.putDouble(base + pendingField(EventKind.DEATH.ordinal()), birthTime + maxAge);
+    }
+
+    private static int pendingField(int kind) {
+        return AgentStore.PENDING + 8 * kind;
     }
 
     public boolean isInfected(){
-        return !this.infectedWith.isEmpty();
+        return !infected.isEmpty();
     }
 
     private boolean immuneTo(Disease d) {
-        return HammingDistance.getMinHammingDistance(immuneSystem, d.getGenome())[0] == 0;
+        return immunity.distance(immuneSystem, d) == 0;
     }
 
     public void immuneResponse(boolean change) {
-        if (change && infectedWith.size() > 0) {
-            immuneSystem = HammingDistance.closerByOne(immuneSystem, ((Disease) infectedWith.toArray()[0]).getGenome());
+        DiseaseRegistry diseases = store.getDiseases();
+        int first = infected.nextId(0);
+        if (change && first >= 0) {
+            Disease target = diseases.get(first);
+            int flipped = HammingDistance.closerByOne(immuneSystem, target.getGenome(),
+                    immunity.distance(immuneSystem, target), immunity.offset(immuneSystem, target));
+            if (flipped >= 0) {
+                immunity.bitFlipped(immuneSystem, flipped);
+            }
+        }
+        for (int i = first; i >= 0; i = infected.nextId(i + 1)) {
+            Disease d = diseases.get(i);
+            if (immuneTo(d)) {
+                setMetabolicRate(getMetabolicRate() - d.getMetabolicPenalty());
+                carrying.add(i);
+                infected.remove(i);
+                census.cleared(id, d, infected.isEmpty());
+            }
         }
-        ArrayList<Disease> toRemove = new ArrayList<>();
-        infectedWith.stream().filter(this::immuneTo).forEach(d -> {
-            metabolicRate -= d.getMetabolicPenalty();
-            carrying.add(d);
-            toRemove.add(d);
-        });
-        toRemove.forEach(infectedWith::remove);
     }
 
-    public void randomMutateImmuneSystem(Random rng) {
-        int i = rng.nextInt(immuneSystem.length());
-        if (immuneSystem.charAt(i) == '0') {
-            immuneSystem = replaceAt(immuneSystem, i, '1');
-        } else {
-            immuneSystem = replaceAt(immuneSystem, i, '0');
-        }
+    public void randomMutateImmuneSystem() {
+        int i = random.nextInt(immuneSystem.length());
+        immuneSystem.flip(i);
+        immunity.bitFlipped(immuneSystem, i);
 
         immuneResponse(false);
     }
 
-    private String replaceAt(String a, int location, char replacement) {
-        String s = a.substring(0, location);
-        s += replacement;
-        s += a.substring(location + 1);
-        return s;
-    }
-
     public void infectWith(Disease d) {
         if (d != null && !immuneTo(d)) {
-            infectedWith.add(d);
-            metabolicRate += d.getMetabolicPenalty();
-            carrying.remove(d);
+            boolean firstInfection = infected.isEmpty();
+            if (infected.add(d.getId())) {
+                census.caught(id, d, firstInfection);
+            }
+            setMetabolicRate(getMetabolicRate() + d.getMetabolicPenalty());
+            carrying.remove(d.getId());
         }
     }
 
-    public void scheduleNewEvent(Event e) {
-        eventList.add(e);
+    // An agent has at most one pending event of each kind, except that starving may
+    // schedule a second death; only the earlier of the two deaths matters
+    public void scheduleNewEvent(EventKind kind, double time) {
+        int field = pendingField(kind.ordinal());
+        record.putDouble(base + field, Math.min(record.getDouble(base + field), time));
+    }
+
+    // Time of the pending event of a kind, infinite if there is none
+    public double getPendingTime(EventKind kind) {
+        return record.getDouble(base + pendingField(kind.ordinal()));
     }
 
-    public Event getNextEvent() {
-        return eventList.poll();
+    // Forget the pending event of a kind, for engines that carry it out without a calendar
+    public void clearPending(EventKind kind) {
+        record.putDouble(base + pendingField(kind.ordinal()), Double.POSITIVE_INFINITY);
+    }
+
+    // Move this agent's earliest pending event onto the calendar
+    public void scheduleNextEvent(EventCalendar calendar) {
+        int next = 0;
+        double nextTime = record.getDouble(base + pendingField(0));
+        for (int k = 1; k < EventKind.AGENT_KINDS; k++) {
+            double time = record.getDouble(base + pendingField(k));
+            if (time < nextTime) {
+                next = k;
+                nextTime = time;
+            }
+        }
+        calendar.schedule(nextTime, EventKind.VALUES[next], this);
+        record.putDouble(base + pendingField(next), Double.POSITIVE_INFINITY);
+    }
+
+    //======================================================================
+    //* void writeTo(CheckpointWriter out)
+    //* static Agent readFrom(CheckpointReader in, AgentStore store,
+    //*                       Census census, RandomStream fork)
+    //* Everything an agent needs to carry on exactly where it was: its
+    //* place, wealth and clocks, its random stream, its immune genome and
+    //* cache, and the ids of the diseases it has and carries, in
+    //* increasing order.  A restored agent counts itself into the census.
+    //* If fork is not null, the agent draws from a new stream split from
+    //* it instead of its saved one.
+    //======================================================================
+    void writeTo(CheckpointWriter out) throws IOException {
+        out.putInt(id);
+        out.putInt(generation);
+        out.putInt(getRow());
+        out.putInt(getCol());
+        out.putInt(getVision());
+        out.putDouble(getMetabolicRate());
+        out.putDouble(getWealth());
+        out.putDouble(record.getDouble(base + AgentStore.LAST_COLLECTED));
+        random.writeTo(out);
+        immuneSystem.writeTo(out);
+        for (int k = 0; k < EventKind.AGENT_KINDS; k++) {
+            out.putDouble(record.getDouble(base + pendingField(k)));
+        }
+        immunity.writeTo(out);
+        writeDiseases(out, infected);
+        writeDiseases(out, carrying);
+    }
+
+    static Agent readFrom(CheckpointReader in, AgentStore store, Census census, RandomStream fork)
+            throws IOException {
+        int id = in.getInt();
+        int generation = in.getInt();
+        int row = in.getInt();
+        int col = in.getInt();
+        int vision = in.getInt();
+        double metabolicRate = in.getDouble();
+        double wealth = in.getDouble();
+        double lastCollected = in.getDouble();
+        RandomStream random = RandomStream.readFrom(in);
+        Genome immuneSystem = Genome.readFrom(in);
+
+        Agent a = new Agent(store, id, generation, vision, metabolicRate, wealth, 0, lastCollected, immuneSystem,
+                fork == null ? random : fork.split(), census);
+        a.setRowCol(row, col);
+        for (int k = 0; k < EventKind.AGENT_KINDS; k++) {
+            a.record.putDouble(a.base + pendingField(k), in.getDouble());
+        }
+        a.immunity.readFrom(in);
+        census.born();
+        DiseaseRegistry diseases = store.getDiseases();
+        readDiseases(in, diseases, a.infected);
+        int first = a.infected.nextId(0);
+        for (int i = first; i >= 0; i = a.infected.nextId(i + 1)) {
+            census.caught(id, diseases.get(i), i == first);
+        }
+        readDiseases(in, diseases, a.carrying);
+        return a;
+    }
+
+    private static void writeDiseases(CheckpointWriter out, DiseaseSet diseases) throws IOException {
+        out.putInt(diseases.size());
+        for (int i = diseases.nextId(0); i >= 0; i = diseases.nextId(i + 1)) {
+            out.putInt(i);
+        }
+    }
+
+    private static void readDiseases(CheckpointReader in, DiseaseRegistry diseases, DiseaseSet into)
+            throws IOException {
+        int n = in.getCount(diseases.size());
+        for (int i = 0; i < n; i++) {
+            into.add(in.getCount(diseases.size() - 1));
+        }
     }
 
     // simple accessor methods below
     public int getRow() {
-        return this.row;
+        return record.getInt(base + AgentStore.ROW);
     }
 
     public int getCol() {
-        return this.col;
+        return record.getInt(base + AgentStore.COL);
     }
 
-    public String getID() {
+    public int getVision() {
+        return record.getInt(base + AgentStore.VISION);
+    }
+
+    public int getID() {
         return this.id;
     }
 
+    public int getGeneration() {
+        return this.generation;
+    }
+
+    public RandomStream getRandom() {
+        return this.random;
+    }
+
+    public Genome getImmuneSystem() {
+        return this.immuneSystem;
+    }
+
+    public DiseaseSet getInfections() {
+        return this.infected;
+    }
+
+    public ImmunityCache getImmunityCache() {
+        return this.immunity;
+    }
+
     // simple mutator methods below
     public void setRowCol(int row, int col) {
-        this.row = row;
-        this.col = col;
+        record.putInt(base + AgentStore.ROW, row);
+        record.putInt(base + AgentStore.COL, col);
     }
 
-    public void collectResources(Cell c, double time) {
-        this.wealth = Math.max(0, this.wealth + c.removeResources(time) - (this.metabolicRate * (time - lastCollectedResources)));
-        lastCollectedResources = time;
+    private void setMetabolicRate(double metabolicRate) {
+        record.putDouble(base + AgentStore.METABOLIC_RATE, metabolicRate);
     }
 
-    public void move(Landscape landscape, ArrayList<Agent> agentList, Random rng, double time) {
-        ArrayList<Cell> lookNorth = new ArrayList<>();
-        ArrayList<Cell> lookSouth = new ArrayList<>();
-        ArrayList<Cell> lookEast = new ArrayList<>();
-        ArrayList<Cell> lookWest = new ArrayList<>();
-
-        for (int i = this.row; i < this.row + this.vision; i++) {
-            lookSouth.add(landscape.getCellAt(i, this.col));
-        }
-        for (int i = this.row; i > this.row - this.vision; i--) {
-            lookNorth.add(landscape.getCellAt(i, this.col));
-        }
-        for (int i = this.col; i < this.col + this.vision; i++) {
-            lookEast.add(landscape.getCellAt(this.row, i));
-        }
-        for (int i = this.col; i > this.col - this.vision; i--) {
-            lookWest.add(landscape.getCellAt(this.row, i));
-        }
+    public void collectResources(Landscape landscape, double time) {
+        double eaten = landscape.removeResources(landscape.index(getRow(), getCol()), time);
+        record.putDouble(base + AgentStore.WEALTH, wealthAfter(eaten, time));
+        record.putDouble(base + AgentStore.LAST_COLLECTED, time);
+    }
 
-        lookNorth.removeIf(Cell::isOccupied);
-        lookSouth.removeIf(Cell::isOccupied);
-        lookEast.removeIf(Cell::isOccupied);
-        lookWest.removeIf(Cell::isOccupied);
+    // Wealth at the given time if the agent eats the given amount then
+    private double wealthAfter(double eaten, double time) {
+        double lastCollected = record.getDouble(base + AgentStore.LAST_COLLECTED);
+        return Math.max(0, getWealth() + eaten - (getMetabolicRate() * (time - lastCollected)));
+    }
 
-        List<Cell> allOptions = new ArrayList<>();
-        allOptions.addAll(lookNorth);
-        allOptions.addAll(lookSouth);
-        allOptions.addAll(lookEast);
-        allOptions.addAll(lookWest);
+    //======================================================================
+    //* public void move(Landscape landscape, double time)
+    //* Look up to vision - 1 cells north, south, east and west and move to
+    //* the unoccupied one with the most resources right now.  Ties go to
+    //* the closest cell, and cells that are equally rich and equally close
+    //* are picked from uniformly by reservoir sampling, so the scan is a
+    //* single pass that allocates nothing.  After moving, the agent trades
+    //* diseases with the agents on the four neighbouring cells.
+    //*
+    //* The three steps are also available separately for engines that
+    //* gather all the choices before any agent moves.
+    //======================================================================
+    public void move(Landscape landscape, double time) {
+        int selected = chooseCell(landscape, time);
 
         // Nowhere to move, just stay put
-        if (allOptions.size() <= 0) {
+        if (selected < 0) {
             return;
         }
+        moveTo(landscape, selected);
+        contactNeighbours(landscape);
+    }
 
-        // Sort by resource level
-        Collections.sort(allOptions);
-        // Reverse so that the highest resource level is first
-        Collections.reverse(allOptions);
-        // Keep duplicate highest resource levels, but remove any cells that are less than the highest
-        double maxResourceLevel = allOptions.get(0).getResourceLevel(time);
-        allOptions.removeIf(c -> c.getResourceLevel(time) < maxResourceLevel);
-
-        Cell selectedCell = allOptions.get(0);
-        if (allOptions.size() > 1) {
-            double minDist = Double.POSITIVE_INFINITY;
-            ArrayList<Cell> minDistCells = new ArrayList<>();
-            for (Cell c : allOptions) {
-                int dist = distance(c, landscape);
-                if (dist == minDist) {
-                    minDistCells.add(c);
+    // The cell this agent would move to, or -1 if every cell in sight is occupied;
+    // reads the landscape but changes nothing except this agent's random stream
+    public int chooseCell(Landscape landscape, double time) {
+        long start = Instrumentation.ENABLED ? System.nanoTime() : 0;
+        int size = landscape.getGridSize();
+        int selected = -1;
+        double bestLevel = Double.NEGATIVE_INFINITY;
+        int bestDist = Integer.MAX_VALUE;
+        int ties = 0;
+        int row = getRow();
+        int col = getCol();
+        int vision = getVision();
+
+        for (int k = 1; k < vision; k++) {
+            int dist = Math.min(k, size - k);  // the grid wraps, so far cells may be close
+            for (int dir = 0; dir < 4; dir++) {
+                int cell = landscape.index(row + k * ROW_STEP[dir], col + k * COL_STEP[dir]);
+                if (landscape.isOccupied(cell)) {
+                    continue;
                 }
-                if (dist < minDist) {
-                    minDist = dist;
-                    minDistCells.clear();
-                    minDistCells.add(c);
+                double level = landscape.getResourceLevel(cell, time);
+                if (level > bestLevel || (level == bestLevel && dist < bestDist)) {
+                    selected = cell;
+                    bestLevel = level;
+                    bestDist = dist;
+                    ties = 1;
+                } else if (level == bestLevel && dist == bestDist && random.nextInt(++ties) == 0) {
+                    selected = cell;
                 }
             }
-
-            // Randomly choose from the options if there is more than 1
-            selectedCell = minDistCells.get(landscape.getRng().nextInt(minDistCells.size()));
         }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.MOVE_SCAN.recordSince(start);
+        }
+        return selected;
+    }
 
-        // Make the move
-        landscape.getCellAt(this.row, this.col).setOccupied(false);
-        selectedCell.setOccupied(true);
-        this.setRowCol(selectedCell.getRow(), selectedCell.getCol());
-
-        ArrayList<Cell> neighbors = new ArrayList<>();
-        neighbors.add(landscape.getCellAt(this.row + 1, this.col));
-        neighbors.add(landscape.getCellAt(this.row - 1, this.col));
-        neighbors.add(landscape.getCellAt(this.row, this.col + 1));
-        neighbors.add(landscape.getCellAt(this.row, this.col - 1));
-
-        ArrayList<Disease> newDiseases = new ArrayList<>();
-
-        agentList.forEach(neighbor ->
-                neighbors.stream()
-                        .filter(c -> neighbor.getCol() == c.getCol() && neighbor.getRow() == c.getRow())
-                        .forEach(c -> {
-                            neighbor.infectWith(getRandomDisease());
-                            newDiseases.add(neighbor.getRandomDisease());
-                        })
-        );
+    public void moveTo(Landscape landscape, int cell) {
+        landscape.moveOccupant(landscape.index(getRow(), getCol()), cell);
+        this.setRowCol(landscape.rowOf(cell), landscape.colOf(cell));
+    }
 
-        if (newDiseases.size() > 0) {
-            infectWith(newDiseases.get(rng.nextInt(newDiseases.size())));
+    // Each cell knows its occupant, so finding the neighbours is four lookups.  Every
+    // neighbour may catch one of our diseases, and we catch one disease offered by a
+    // neighbour chosen uniformly at random (which may be none).
+    public void contactNeighbours(Landscape landscape) {
+        long start = Instrumentation.ENABLED ? System.nanoTime() : 0;
+        Disease caught = null;
+        int contacts = 0;
+        int row = getRow();
+        int col = getCol();
+        for (int dir = 0; dir < 4; dir++) {
+            Agent neighbor = landscape.getOccupant(landscape.index(row + ROW_STEP[dir], col + COL_STEP[dir]));
+            if (neighbor != null) {
+                neighbor.infectWith(getRandomDisease(random));
+                Disease offered = neighbor.getRandomDisease(random);
+                if (random.nextInt(++contacts) == 0) {
+                    caught = offered;
+                }
+            }
+        }
+        infectWith(caught);
+        if (Instrumentation.ENABLED) {
+            Instrumentation.CONTACTS.recordSince(start);
         }
     }
 
-    private Disease getRandomDisease() {
-        ArrayList<Disease> myDiseases = new ArrayList<>();
-        myDiseases.addAll(infectedWith);
-        myDiseases.addAll(carrying);
-        if (myDiseases.size() <= 0) {
+    // A disease chosen uniformly from those this agent is infected with or carrying,
+    // or null if there are none.  The caller's stream is used so that a contact only
+    // draws from the stream of the agent that moved.
+    private Disease getRandomDisease(RandomStream rng) {
+        int infections = infected.size();
+        int total = infections + carrying.size();
+        if (total <= 0) {
             return null;
         }
-        Random rng = new Random();
-        return myDiseases.get(rng.nextInt(myDiseases.size()));
+        int pick = rng.nextInt(total);
+        int id = pick < infections ? infected.get(pick) : carrying.get(pick - infections);
+        return store.getDiseases().get(id);
     }
 
-    public int distance(Cell c, Landscape l) {
-        int size = l.getGridSize();
-        int x = c.getRow();
-        int y = c.getCol();
-
-        if (x == this.row) {
-            return Math.min(Math.abs(this.col - y), Math.abs(this.col - y - size));
-        } else if (y == this.col) {
-            return Math.min(Math.abs(this.row - x), Math.abs(this.row - x - size));
-        }
+    public double getWealth() {
+        return record.getDouble(base + AgentStore.WEALTH);
+    }
 
-        return -1;
+    //======================================================================
+    //* Wealth between events, in closed form.  Until the agent moves it
+    //* stays on its cell, which regrows at its regrowth rate up to its
+    //* capacity, while the agent burns metabolicRate.  wealthAt(t) is the
+    //* wealth the agent would have if it collected its cell at time t, and
+    //* starvationTime() the first time that wealth reaches zero, assuming
+    //* the agent does not move or change its metabolic rate before then.
+    //======================================================================
+    public double wealthAt(Landscape landscape, double time) {
+        return wealthAfter(landscape.getResourceLevel(landscape.index(getRow(), getCol()), time), time);
     }
 
-    public double getWealth() {
-        return wealth;
+    public double starvationTime(Landscape landscape) {
+        double metabolicRate = getMetabolicRate();
+        if (metabolicRate <= 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        int cell = landscape.index(getRow(), getCol());
+        double regrowthRate = landscape.getRegrowthRate(cell);
+        double full = landscape.getFullTime(cell);
+        double start = record.getDouble(base + AgentStore.LAST_COLLECTED);
+
+        // While the cell regrows, wealth changes at regrowthRate - metabolicRate
+        if (start < full && regrowthRate < metabolicRate) {
+            double zero = start + wealthAt(landscape, start) / (metabolicRate - regrowthRate);
+            if (zero <= full) {
+                return zero;
+            }
+        }
+        // Once the cell is full, only the metabolism counts
+        return start + (getWealth() + landscape.getCapacity(cell)) / metabolicRate;
     }
 
     public double getMetabolicRate() {
-        return this.metabolicRate;
+        return record.getDouble(base + AgentStore.METABOLIC_RATE);
     }
 }
 
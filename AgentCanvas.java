@@ -1,14 +1,34 @@
 import javax.swing.*;
 import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.geom.Path2D;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
 import java.text.DecimalFormat;
-import java.util.stream.IntStream;
 
 
 //======================================================================
 //* This class implements the agent canvas for our agent-based simulation,
 //* specifically drawing the grid and (eventually) drawing the agents
-//* that will run rampant thereupon.
+//* that will run rampant thereupon.  It paints the latest Frame from a
+//* FrameExchanger and never reads the simulation itself, so the engine
+//* can keep running while the canvas paints.
+//*
+//* Only the part of the grid that is scrolled into view is drawn: the
+//* canvas asks the exchanger for frames of just the visible View.  At
+//* zoom 0 each cell is agentGUISize pixels wide, with its agent and the
+//* grid lines on top.  Zooming out (ctrl + mouse wheel, or the + and -
+//* keys) draws one pixel per tile of the LandscapeSummary pyramid
+//* instead: zoom z shows tiles of 2^(z-1) cells a side, colored by
+//* their mean resource level and the share of their cells holding
+//* infected and healthy agents, so a frame costs about the same however
+//* large the grid.  Grids too large to fit MAX_START_SIZE pixels at
+//* zoom 0 start zoomed out.
+//*
+//* The landscape is an image with one pixel per tile of the view,
+//* whose int[] raster is copied from each new frame and scaled up when
+//* drawn.  Agents are stamped from two images drawn once.
 //======================================================================
 class AgentCanvas extends JPanel {
     private int viewportX;  // where in the viewport to start drawing image/grid
@@ -16,22 +36,55 @@ class AgentCanvas extends JPanel {
 
     private int gridWidth;   // width of grid in cells
     private int gridHeight;  // height of grid in cells
-    private double maxCapacity; // max resource capacity of any cell
-    private boolean showCurrentCapacity = false;
 
     private static final int agentGUISize = 10;
+    private static final int MAX_START_SIZE = 1000;  // pixels a side shown at the starting zoom
 
-    private final SimulationManager simulation; // a reference to the simulation object
+    private int zoom;       // 0 for cells with their agents, z > 0 for a pixel per tile of level z - 1
+    private int maxZoom;    // a single tile
+
+    private BufferedImage landscape;  // one pixel per tile of the painted frame's view
+    private int[] pixels;             // the landscape's raster
+    private long paintedSequence = 0; // frame the landscape image shows
+    private View shown;               // the view last handed to the exchanger
+    private View linesView;           // the view gridLines were made for
+    private Path2D gridLines;         // grid lines of linesView, with the grid's top left corner at 0,0
+    private static final BufferedImage HEALTHY = makeAgentImage(Color.blue);
+    private static final BufferedImage INFECTED = makeAgentImage(Color.red);
+
+    private final FrameExchanger frames; // where the engine publishes what to draw
 
     //======================================================================
     //* public AgentCanvas()
-    //* Constructor for the agent canvas.  Needs a reference to the
-    //* simulation manager.
+    //* Constructor for the agent canvas.  Needs the exchanger the engine
+    //* publishes its frames to.
     //======================================================================
-    public AgentCanvas(SimulationManager theSimulation, boolean printCurrentCapacity) {
-        simulation = theSimulation;
-        showCurrentCapacity = printCurrentCapacity;
+    public AgentCanvas(FrameExchanger frames) {
+        this.frames = frames;
         updateGrid();
+
+        addMouseWheelListener(e -> {
+            if (e.isControlDown()) {
+                setZoom(zoom + e.getWheelRotation());
+            } else if (getParent() != null) {
+                // plain wheel turns still scroll
+                getParent().dispatchEvent(SwingUtilities.convertMouseEvent(this, e, getParent()));
+            }
+        });
+        InputMap keys = getInputMap(WHEN_IN_FOCUSED_WINDOW);
+        keys.put(KeyStroke.getKeyStroke('+'), "zoomIn");
+        keys.put(KeyStroke.getKeyStroke('='), "zoomIn");
+        keys.put(KeyStroke.getKeyStroke('-'), "zoomOut");
+        getActionMap().put("zoomIn", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) {
+                setZoom(zoom - 1);
+            }
+        });
+        getActionMap().put("zoomOut", new AbstractAction() {
+            public void actionPerformed(ActionEvent e) {
+                setZoom(zoom + 1);
+            }
+        });
     }
 
     //======================================================================
@@ -47,6 +100,49 @@ class AgentCanvas extends JPanel {
         return gridHeight;
     }
 
+    public int getZoom() {
+        return zoom;
+    }
+
+    //======================================================================
+    //* public void setZoom(int zoom)
+    //* Show cells (0) or tiles of 2^(zoom-1) cells a side, keeping the
+    //* middle of what is in view in the middle.
+    //======================================================================
+    public void setZoom(int zoom) {
+        zoom = Math.max(0, Math.min(maxZoom, zoom));
+        if (zoom == this.zoom) {
+            return;
+        }
+        Rectangle visible = getVisibleRect();
+        double middleX = (visible.getCenterX() - viewportX) / renderedSize();
+        double middleY = (visible.getCenterY() - viewportY) / renderedSize();
+
+        this.zoom = zoom;
+        int size = renderedSize();
+        setPreferredSize(new Dimension(size, size));
+        revalidate();
+        SwingUtilities.invokeLater(() -> scrollRectToVisible(new Rectangle(
+                (int) (middleX * size) - visible.width / 2, (int) (middleY * size) - visible.height / 2,
+                visible.width, visible.height)));
+        repaint();
+    }
+
+    // The pyramid level drawn at the current zoom
+    private int level() {
+        return Math.max(0, zoom - 1);
+    }
+
+    // Pixels a side of a drawn tile
+    private int tilePixels() {
+        return zoom == 0 ? agentGUISize : 1;
+    }
+
+    // Pixels a side of the whole grid as drawn
+    private int renderedSize() {
+        return LandscapeSummary.tilesAcross(gridWidth, level()) * tilePixels();
+    }
+
     //======================================================================
     //* public void changeBackground()
     //* I used to allow the user to select an image background.  Dropped it,
@@ -54,22 +150,29 @@ class AgentCanvas extends JPanel {
     //* reposition at random b/c the image is likely a different size.
     //======================================================================
     public void updateGrid() {
-        gridWidth = simulation.getGridSize();
-        gridHeight = simulation.getGridSize();
+        Frame frame = frames.latest();
+        gridWidth = frame.getGridSize();
+        gridHeight = frame.getGridSize();
 
         // may or may not need to have a reset() method in the simulation mgr
         // simulation.reset();  // remove all agents, etc.
 
-        // determine grid's max capacity for scale colors
-        this.maxCapacity = 0.0;
-        for (int r = 0; r < simulation.gridSize; r++) {
-            for (int c = 0; c < simulation.gridSize; c++) {
-                double capacity = simulation.landscape.getCellAt(r, c).getCapacity();
-                if (capacity > maxCapacity) {
-                    this.maxCapacity = capacity;
-                }
+        maxZoom = LandscapeSummary.levels(gridWidth);
+        zoom = 0;
+        if (gridWidth * agentGUISize > MAX_START_SIZE) {
+            zoom = 1;
+            while (LandscapeSummary.tilesAcross(gridWidth, level()) > MAX_START_SIZE) {
+                zoom++;
             }
         }
+        landscape = null;
+        paintedSequence = 0;
+        linesView = null;
+
+        // until the first paint says what is visible, ask for the top left corner
+        int tiles = Math.min(LandscapeSummary.tilesAcross(gridWidth, level()), MAX_START_SIZE / tilePixels());
+        shown = new View(level(), zoom == 0, 0, 0, tiles, tiles);
+        frames.show(shown);
 
         // call repaint to redisplay the new background, then agents & grid
         repaint();
@@ -85,6 +188,7 @@ class AgentCanvas extends JPanel {
         // safest to create a copy of the graphics component -- one must
         // ensure that no changes are made to the original
         Graphics2D graphics = (Graphics2D) g.create();
+        Frame frame = frames.latest();
 
         JViewport viewport;
         JScrollPane scrollPane;
@@ -92,9 +196,9 @@ class AgentCanvas extends JPanel {
 
         int viewportWidth;
         int viewportHeight;
-        int agentSize = AgentCanvas.agentGUISize;
-        int imageWidth = gridWidth * agentSize;
-        int imageHeight = gridHeight * agentSize;
+        int agentSize = tilePixels();
+        int imageWidth = renderedSize();
+        int imageHeight = renderedSize();
 
         // make sure that we're grabbing onto the viewport of the scroll pane
         Component ancestor = getParent();
@@ -121,8 +225,8 @@ class AgentCanvas extends JPanel {
 
         // Note that drawImage automatically scales the image to fit that
         // rectangle.
-        int renderWidth = gridWidth * agentSize;
-        int renderHeight = gridHeight * agentSize;
+        int renderWidth = imageWidth;
+        int renderHeight = imageHeight;
 
         // determine the starting (x,y) in the viewport where the image
         // will be drawn
@@ -132,33 +236,37 @@ class AgentCanvas extends JPanel {
         // in case there was a previous image, clear things out
         graphics.clearRect(0, 0, viewportWidth, viewportHeight);
 
-        // draw the resource capacities
-        drawCapacity(graphics, viewportX, viewportY, renderWidth, renderHeight);
-
-        // now draw the agents; note that the list of agents should be a
-        // _protected_ (not private) instance variable within the simulation
-        for (Agent a : simulation.agentList) {
-            if ((a.getRow() >= 0) && (a.getCol() >= 0) &&
-                    ((a.getRow() * agentSize) + agentSize <= renderHeight) &&
-                    ((a.getCol() * agentSize) + agentSize <= renderWidth)) {
-                int guiX = viewportX + (a.getCol() * agentSize);
-                int guiY = viewportY + (a.getRow() * agentSize);
-
-                if (a.isInfected()) {
-                    graphics.setPaint(Color.red);
-                } else {
-                    graphics.setPaint(Color.blue);
-                }
-
-                graphics.fillOval(guiX, guiY, agentSize, agentSize);
+        // ask for frames of what is in view from now on
+        View view = visibleView(agentSize);
+        if (!view.sameAs(shown)) {
+            shown = view;
+            frames.show(view);
+        }
+
+        // draw the frame if it is at this zoom; after scrolling it may
+        // still be of the view before
+        View drawn = frame.getView();
+        if (drawn != null && drawn.getLevel() == level() && drawn.isDetailed() == (zoom == 0)) {
+            // draw the resource capacities
+            drawCapacity(graphics, frame, drawn, agentSize);
+
+            // now draw the agents
+            for (int i = 0; i < frame.getAgentCount(); i++) {
+                int cell = frame.getAgentCell(i);
+                int guiX = viewportX + ((drawn.getCol() + cell % drawn.getCols()) * agentSize);
+                int guiY = viewportY + ((drawn.getRow() + cell / drawn.getCols()) * agentSize);
+
+                graphics.drawImage(frame.isAgentInfected(i) ? INFECTED : HEALTHY, guiX, guiY, null);
             }
         }
 
         // draw the grid last so that it will overlay the agent squares
-        drawGrid(graphics, viewportX, viewportY, renderWidth, renderHeight);
+        if (zoom == 0) {
+            drawGrid(graphics, view, viewportX, viewportY);
+        }
 
         // show the simulation time, number of agents
-        drawSimulationInfo(graphics, viewportX, viewportY,
+        drawSimulationInfo(graphics, frame, viewportX, viewportY,
                 renderWidth, renderHeight, borders);
 
         revalidate();
@@ -167,75 +275,111 @@ class AgentCanvas extends JPanel {
         graphics.dispose();
     }
 
-    //======================================================================
-    //* private void drawCapacity(Graphics2D graphics)
-    //======================================================================
-    private void drawCapacity(Graphics2D graphics, int x, int y,
-                              int width, int height) {
-
-
-        int cellSize = AgentCanvas.agentGUISize;
-        for (int r = 0; r < simulation.gridSize; r++) {
-            for (int c = 0; c < simulation.gridSize; c++) {
-                int guiX = viewportX + (c * cellSize);
-                int guiY = viewportY + (r * cellSize);
+    // The tiles at least partly inside the visible rectangle
+    private View visibleView(int tileSize) {
+        int tiles = LandscapeSummary.tilesAcross(gridWidth, level());
+        Rectangle visible = getVisibleRect();
+        int col = clamp(Math.floorDiv(visible.x - viewportX, tileSize), 0, tiles);
+        int row = clamp(Math.floorDiv(visible.y - viewportY, tileSize), 0, tiles);
+        int endCol = clamp(-Math.floorDiv(viewportX - visible.x - visible.width, tileSize), col, tiles);
+        int endRow = clamp(-Math.floorDiv(viewportY - visible.y - visible.height, tileSize), row, tiles);
+        return new View(level(), zoom == 0, row, col, endRow - row, endCol - col);
+    }
 
-                // set the color we'll use to draw the agent -- green scaled relative
-                // to maximum landscape capacity
-                Cell cell = simulation.landscape.getCellAt(r, c);
-                double capacity = showCurrentCapacity ? cell.getResourceLevel(simulation.getTime()) : cell.getCapacity();
-                Color color = new Color(0, (int) (255 * capacity / this.maxCapacity), 0);
-                graphics.setPaint(color);
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
 
-                graphics.fillRect(guiX, guiY, cellSize, cellSize);
+    //======================================================================
+    //* private void drawCapacity(Graphics2D graphics, Frame frame, ...)
+    //* Bring the landscape image up to the frame and draw it scaled to
+    //* the tile size where its view lies, green scaled relative to
+    //* maximum landscape capacity.
+    //======================================================================
+    private void drawCapacity(Graphics2D graphics, Frame frame, View drawn, int tileSize) {
+        int rows = drawn.getRows();
+        int cols = drawn.getCols();
+        if (rows == 0 || cols == 0) {
+            return;
+        }
+        if (frame.getSequence() != paintedSequence) {
+            if (landscape == null || landscape.getWidth() != cols || landscape.getHeight() != rows) {
+                landscape = new BufferedImage(cols, rows, BufferedImage.TYPE_INT_RGB);
+                pixels = ((DataBufferInt) landscape.getRaster().getDataBuffer()).getData();
             }
+            System.arraycopy(frame.getColors(), 0, pixels, 0, rows * cols);
+            paintedSequence = frame.getSequence();
         }
-
+        graphics.drawImage(landscape, viewportX + drawn.getCol() * tileSize, viewportY + drawn.getRow() * tileSize,
+                cols * tileSize, rows * tileSize, null);
     }
 
 
     //======================================================================
-    //* private void drawGrid(Graphics2D graphics)
-    //* Draw a grid on top of the background and agents.
+    //* private void drawGrid(Graphics2D graphics, View view, int x, int y)
+    //* Draw the grid of the cells in view on top of the background and
+    //* agents.
     //======================================================================
-    private void drawGrid(Graphics2D graphics, int x, int y,
-                          int width, int height) {
+    private void drawGrid(Graphics2D graphics, View view, int x, int y) {
+        if (!view.sameAs(linesView)) {
+            gridLines = makeGridLines(view, gridWidth * agentGUISize, gridHeight * agentGUISize);
+            linesView = view;
+        }
         graphics.setPaint(Color.black);
+        graphics.translate(x, y);
+        graphics.draw(gridLines);
+        graphics.translate(-x, -y);
+    }
 
-        // the columns
+    // The columns and rows of the cells in view, and the border of a grid of the given size in pixels
+    private static Path2D makeGridLines(View view, int width, int height) {
         int agentSize = AgentCanvas.agentGUISize;
-        IntStream.range(0, width / agentSize)
-            .forEach(row ->
-                graphics.drawLine(x + (row * agentSize), y,
-                x + (row * agentSize), y + height - 1)
-            );
-
-        // the rows
-        IntStream.range(0, height / agentSize)
-            .forEach(col ->
-                graphics.drawLine(x, y + (col * agentSize),
-                x + width - 1, y + (col * agentSize)));
-
-        // the border
-        graphics.drawLine(x, y, x, y + height);
-        graphics.drawLine(x, y, x + width, y);
-        graphics.drawLine(x + width, y, x + width, y + height);
-        graphics.drawLine(x, y + height, x + width, y + height);
+        Path2D lines = new Path2D.Float();
+        int top = view.getRow() * agentSize;
+        int bottom = Math.min((view.getRow() + view.getRows()) * agentSize, height - 1);
+        int left = view.getCol() * agentSize;
+        int right = Math.min((view.getCol() + view.getCols()) * agentSize, width - 1);
+        for (int col = view.getCol(); col < view.getCol() + view.getCols(); col++) {
+            lines.moveTo(col * agentSize, top);
+            lines.lineTo(col * agentSize, bottom);
+        }
+        for (int row = view.getRow(); row < view.getRow() + view.getRows(); row++) {
+            lines.moveTo(left, row * agentSize);
+            lines.lineTo(right, row * agentSize);
+        }
+        lines.moveTo(0, 0);
+        lines.lineTo(0, height);
+        lines.lineTo(width, height);
+        lines.lineTo(width, 0);
+        lines.closePath();
+        return lines;
+    }
+
+    // An agent as drawn on its cell
+    private static BufferedImage makeAgentImage(Color color) {
+        int size = AgentCanvas.agentGUISize;
+        BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setPaint(color);
+        graphics.fillOval(0, 0, size, size);
+        graphics.dispose();
+        return image;
     }
 
     //======================================================================
-    //* private void drawSimulationInfo(Graphics2D graphics, int x, int y,
+    //* private void drawSimulationInfo(Graphics2D graphics, Frame frame,
+    //*                                 int x, int y, ...)
     //======================================================================
-    private void drawSimulationInfo(Graphics2D graphics, int x, int y,
+    private void drawSimulationInfo(Graphics2D graphics, Frame frame, int x, int y,
                                     int width, int height, Insets borders) {
         final int verticalSpaceBeforeText = 20;
 
         DecimalFormat df = new DecimalFormat("0.00");
 
-        String info = "Time: " + df.format(simulation.getTime()) + " " +
-                "Agents: " + simulation.agentList.size() + " " +
-                "Healthy: " + simulation.agentList.stream().filter(a -> !a.isInfected()).count() + " " +
-                "Infected: " + simulation.agentList.stream().filter(Agent::isInfected).count();
+        String info = "Time: " + df.format(frame.getTime()) + " " +
+                "Agents: " + frame.getPopulation() + " " +
+                "Healthy: " + frame.getHealthy() + " " +
+                "Infected: " + frame.getInfected();
 
         // Find the size of string in the font being used by the current
         // Graphics2D context.
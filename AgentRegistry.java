@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+//======================================================================
+//* Maps integer agent handles to agents.  Handles index straight into a
+//* dense slot array, and handles of dead agents are kept on a free list
+//* so the next birth reuses them instead of growing the table.
+//*
+//* Every slot also has a generation number which is bumped whenever its
+//* agent dies, so an event stamped with an older generation can be
+//* recognised as stale without searching for it.
+//======================================================================
+class AgentRegistry implements Iterable<Agent> {
+    private Agent[] slots = new Agent[16];
+    private int[] generations = new int[16];
+    private int[] freeHandles = new int[16];
+    private int freeCount = 0;
+    private int highWater = 0;  // first handle that has never been used
+    private int size = 0;
+
+    // Reserve a handle for an agent that is about to be constructed
+    int nextHandle() {
+        if (freeCount > 0) {
+            return freeHandles[--freeCount];
+        }
+        if (highWater == slots.length) {
+            slots = Arrays.copyOf(slots, slots.length * 2);
+            generations = Arrays.copyOf(generations, generations.length * 2);
+        }
+        return highWater++;
+    }
+
+    // Generation that an agent constructed for this handle should stamp on its events
+    int generationOf(int handle) {
+        return generations[handle];
+    }
+
+    void put(int handle, Agent a) {
+        assert slots[handle] == null;
+        assert a.getGeneration() == generations[handle];
+        slots[handle] = a;
+        size++;
+    }
+
+    Agent get(int handle) {
+        return slots[handle];
+    }
+
+    // True if the handle still refers to the agent that had this generation
+    boolean isCurrent(int handle, int generation) {
+        return slots[handle] != null && generations[handle] == generation;
+    }
+
+    void release(int handle) {
+        assert slots[handle] != null;
+        slots[handle] = null;
+        generations[handle]++;
+        size--;
+        if (freeCount == freeHandles.length) {
+            freeHandles = Arrays.copyOf(freeHandles, freeHandles.length * 2);
+        }
+        freeHandles[freeCount++] = handle;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // One past the highest handle in use, for scanning the slots by handle
+    int capacity() {
+        return highWater;
+    }
+
+    // The handle table, including the free list in order so that a restored registry
+    // hands out the same handles, followed by the live agents in handle order
+    void writeTo(CheckpointWriter out) throws IOException {
+        out.putInt(highWater);
+        out.putInts(generations, 0, highWater);
+        out.putInt(freeCount);
+        out.putInts(freeHandles, 0, freeCount);
+        out.putInt(size);
+        for (Agent a : this) {
+            a.writeTo(out);
+        }
+    }
+
+    // Fill an empty registry from a checkpoint; see Agent.readFrom for the arguments
+    void readFrom(CheckpointReader in, AgentStore store, Census census, RandomStream fork) throws IOException {
+        if (highWater != 0) {
+            throw new IllegalStateException("Registry is not empty");
+        }
+        int handles = in.getCount(Integer.MAX_VALUE / 2);
+        slots = new Agent[Math.max(16, handles)];
+        generations = new int[slots.length];
+        in.getInts(generations, 0, handles);
+        highWater = handles;
+
+        freeCount = in.getCount(handles);
+        freeHandles = new int[Math.max(16, freeCount)];
+        in.getInts(freeHandles, 0, freeCount);
+
+        int live = in.getCount(handles - freeCount);
+        for (int i = 0; i < live; i++) {
+            Agent a = Agent.readFrom(in, store, census, fork);
+            int handle = a.getID();
+            if (handle < 0 || handle >= handles || slots[handle] != null
+                    || a.getGeneration() != generations[handle]) {
+                throw new IOException("Corrupt checkpoint: agent handle " + handle);
+            }
+            put(handle, a);
+        }
+    }
+
+    Stream<Agent> stream() {
+        return Arrays.stream(slots, 0, highWater).filter(Objects::nonNull);
+    }
+
+    // Iterates the live agents in handle order
+    @Override
+    public Iterator<Agent> iterator() {
+        return new Iterator<Agent>() {
+            private int next = advance(0);
+
+            private int advance(int from) {
+                while (from < highWater && slots[from] == null) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < highWater;
+            }
+
+            @Override
+            public Agent next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Agent a = slots[next];
+                next = advance(next + 1);
+                return a;
+            }
+        };
+    }
+}
@@ -0,0 +1,167 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+//======================================================================
+//* Off-heap storage for the state of every agent, one fixed-width
+//* record per agent handle, in direct buffers outside the Java heap:
+//*   int    row, col, vision, immune genome length
+//*   double metabolic rate, wealth, time of the last collection
+//*   double pending time of each kind of event
+//*   long   immunity cache hits, misses, updates
+//*   long   immune genome words
+//*   long   infected and carrying disease bitsets, each sized for every
+//*          id the disease registry can hold
+//*   int    immunity cache slots: disease id, distance and offset
+//* The garbage collector never sees the records, so a population of
+//* millions costs it no more than the small Agent, StoredGenome,
+//* DiseaseSet and ImmunityCache flyweights through which the engine
+//* reads them.
+//*
+//* The immunity cache is direct-mapped: disease id i goes in slot
+//* i % CACHE_SLOTS, so a registry of thousands of diseases does not make
+//* every record thousands of entries long.  Registries no larger than
+//* the slot count get a slot per disease and never evict.
+//*
+//* Records live in chunks of CHUNK records, each its own buffer, so
+//* adding chunks never moves existing records and a store can outgrow
+//* the 2GB limit of a single buffer.  Buffers use absolute access only,
+//* so threads working on different agents need no locking.
+//======================================================================
+final class AgentStore {
+    static final int ROW = 0;
+    static final int COL = 4;
+    static final int VISION = 8;
+    static final int IMMUNE_LENGTH = 12;
+    static final int METABOLIC_RATE = 16;
+    static final int WEALTH = 24;
+    static final int LAST_COLLECTED = 32;
+    static final int PENDING = 40;  // one double per EventKind, by ordinal
+    static final int CACHE_HITS = PENDING + 8 * EventKind.AGENT_KINDS;
+    static final int CACHE_MISSES = CACHE_HITS + 8;
+    static final int CACHE_UPDATES = CACHE_MISSES + 8;
+    private static final int GENOME = CACHE_UPDATES + 8;
+
+    // Most immunity cache slots per record; a power of two
+    static final int CACHE_SLOTS = 64;
+
+    private static final int CHUNK_BITS = 12;
+    private static final int CHUNK = 1 << CHUNK_BITS;
+
+    private final DiseaseRegistry diseases;
+    private final int maxImmuneLength;
+    private final int infected;     // start of the infected bitset
+    private final int carrying;     // start of the carrying bitset
+    private final int cache;        // start of the immunity cache slots
+    private final int cacheSlots;
+    private final int recordSize;
+    private ByteBuffer[] chunks = new ByteBuffer[0];
+    private int chunkCount = 0;
+
+    AgentStore(DiseaseRegistry diseases, int maxImmuneLength) {
+        this.diseases = diseases;
+        this.maxImmuneLength = maxImmuneLength;
+        this.infected = GENOME + 8 * ((maxImmuneLength + 63) >>> 6);
+        this.carrying = infected + 8 * diseases.maskWords();
+        this.cache = carrying + 8 * diseases.maskWords();
+        this.cacheSlots = Math.min(CACHE_SLOTS, Integer.highestOneBit(Math.max(1, diseases.capacity() - 1)) << 1);
+        this.recordSize = (cache + 12 * cacheSlots + 7) & ~7;
+    }
+
+    // Make room for records up to the given handle, and clear its record
+    void allocate(int handle) {
+        int needed = (handle >>> CHUNK_BITS) + 1;
+        if (needed > chunks.length) {
+            chunks = Arrays.copyOf(chunks, Math.max(needed, 2 * chunks.length));
+        }
+        for (; chunkCount < needed; chunkCount++) {
+            chunks[chunkCount] = ByteBuffer.allocateDirect(CHUNK * recordSize).order(ByteOrder.nativeOrder());
+        }
+        ByteBuffer chunk = chunks[handle >>> CHUNK_BITS];
+        int base = base(handle);
+        for (int i = 0; i < recordSize; i += 8) {
+            chunk.putLong(base + i, 0);
+        }
+    }
+
+    DiseaseRegistry getDiseases() {
+        return diseases;
+    }
+
+    int getMaxImmuneLength() {
+        return maxImmuneLength;
+    }
+
+    int getCacheSlots() {
+        return cacheSlots;
+    }
+
+    // Byte offsets within a record of the variable-length parts
+    static int genomeWord(int w) {
+        return GENOME + 8 * w;
+    }
+
+    int infectedSet() {
+        return infected;
+    }
+
+    int carryingSet() {
+        return carrying;
+    }
+
+    int cacheDisease(int slot) {
+        return cache + 12 * slot;
+    }
+
+    int cacheDistance(int slot) {
+        return cache + 12 * slot + 4;
+    }
+
+    int cacheOffset(int slot) {
+        return cache + 12 * slot + 8;
+    }
+
+    //======================================================================
+    //* ByteBuffer chunkOf(int handle)
+    //* int base(int handle)
+    //* The buffer holding an allocated record and the record's offset in
+    //* it.  The flyweights keep both, so that reading a field is a single
+    //* absolute access rather than a walk through the chunk table.
+    //======================================================================
+    ByteBuffer chunkOf(int handle) {
+        return chunks[handle >>> CHUNK_BITS];
+    }
+
+    int base(int handle) {
+        return (handle & (CHUNK - 1)) * recordSize;
+    }
+
+    int getInt(int handle, int field) {
+        return chunks[handle >>> CHUNK_BITS].getInt(base(handle) + field);
+    }
+
+    void putInt(int handle, int field, int value) {
+        chunks[handle >>> CHUNK_BITS].putInt(base(handle) + field, value);
+    }
+
+    long getLong(int handle, int field) {
+        return chunks[handle >>> CHUNK_BITS].getLong(base(handle) + field);
+    }
+
+    void putLong(int handle, int field, long value) {
+        chunks[handle >>> CHUNK_BITS].putLong(base(handle) + field, value);
+    }
+
+    double getDouble(int handle, int field) {
+        return chunks[handle >>> CHUNK_BITS].getDouble(base(handle) + field);
+    }
+
+    void putDouble(int handle, int field, double value) {
+        chunks[handle >>> CHUNK_BITS].putDouble(base(handle) + field, value);
+    }
+
+    // Bytes of off-heap memory held, for reports
+    long bytesAllocated() {
+        return (long) chunkCount * CHUNK * recordSize;
+    }
+}
@@ -0,0 +1,87 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.List;
+
+//======================================================================
+//* Headless entry points, kept apart from SimulationManager so that
+//* batch machines need neither Swing nor the squint jar:
+//*   java Batch [gridSize numAgents replications]
+//*       runs replications in parallel and prints the mean outcome,
+//*       with -Dmetrics=<dir> for a time series of each one
+//*   java Batch burnin <file> [gridSize numAgents time]
+//*       runs one simulation and saves a checkpoint for batch runs to
+//*       fork from with -Dcheckpoint=<file>
+//======================================================================
+class Batch {
+    private static final int SEED = 8675309;
+
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("burnin")) {
+            burnIn(args);
+        } else {
+            batch(args);
+        }
+    }
+
+    private static void burnIn(String[] args) {
+        if (args.length < 2) {
+            throw new IllegalArgumentException("Usage: Batch burnin <file> [gridSize numAgents time]");
+        }
+        int gridSize = args.length >= 4 ? Integer.parseInt(args[2]) : 40;
+        int numAgents = args.length >= 4 ? Integer.parseInt(args[3]) : 400;
+        double time = args.length >= 5 ? Double.parseDouble(args[4]) : 50;
+
+        Simulation simulation = new Simulation(gridSize, numAgents, SEED);
+        Engine.fromSystemProperty(simulation).runUntil(time);
+        try {
+            Checkpoint.save(simulation, Paths.get(args[1]));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write " + args[1], e);
+        }
+        System.out.println("Saved " + args[1] + " at time " + time);
+    }
+
+    // Optional grid size, population and replication count for larger batch runs,
+    // e.g. "400 40000 1000"
+    private static void batch(String[] args) {
+        int gridSize = args.length >= 2 ? Integer.parseInt(args[0]) : 40;
+        int numAgents = args.length >= 2 ? Integer.parseInt(args[1]) : 400;
+        int replications = args.length >= 3 ? Integer.parseInt(args[2]) : 50;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        long[] gcBefore = gcProfile();
+        List<ReplicationResult> results = new ReplicationRunner(gridSize, numAgents, 100, threads)
+                .run(SEED, replications);
+        results.forEach(System.out::println);
+
+        System.out.println("Average Number of Healthy Agents: "
+                + Math.round(ReplicationRunner.mean(results, ReplicationResult::getNumHealthy))
+                + " (95% CI +/- " + String.format("%.1f", ReplicationRunner.confidenceHalfWidth(results, ReplicationResult::getNumHealthy)) + ")");
+        System.out.println("Average Number of Infected Agents: "
+                + Math.round(ReplicationRunner.mean(results, ReplicationResult::getNumInfected))
+                + " (95% CI +/- " + String.format("%.1f", ReplicationRunner.confidenceHalfWidth(results, ReplicationResult::getNumInfected)) + ")");
+        System.out.println("Stale Events Skipped: " + results.stream().mapToLong(ReplicationResult::getStaleEventsSkipped).sum());
+        System.out.println("Immunity Cache: "
+                + results.stream().mapToLong(ReplicationResult::getImmunityCacheHits).sum() + " hits, "
+                + results.stream().mapToLong(ReplicationResult::getImmunityCacheMisses).sum() + " misses");
+
+        long[] gcAfter = gcProfile();
+        System.out.println("GC: " + (gcAfter[0] - gcBefore[0]) + " collections, "
+                + (gcAfter[1] - gcBefore[1]) + " ms, "
+                + (results.stream().mapToLong(ReplicationResult::getAllocatedBytes).sum() >> 20) + " MB allocated");
+    }
+
+    // Total GC collections and GC milliseconds so far
+    private static long[] gcProfile() {
+        long collections = 0;
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collections += Math.max(0, gc.getCollectionCount());
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[]{collections, millis};
+    }
+}
@@ -0,0 +1,405 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+//======================================================================
+//* Benchmark suite for the hot paths, with a tracked baseline:
+//*   hamming.*   HammingDistance scans across genome lengths
+//*   move.*      Agent.move across visions and population densities
+//*   landscape.* Landscape.getCellAt and the bulk resource query
+//*   calendar.*  hold-model throughput of the event calendar
+//*   engine.*    whole simulations, per event handled, by grid size
+//* Each case runs in FORKS JVMs of its own, as JMH forks do: WARMUP
+//* untimed rounds for the JIT, then MEASURED timed rounds, each of at
+//* least ROUND_NANOS.  The median over forks of each fork's median
+//* round is reported in ns per operation.
+//* Every case returns a checksum that is printed, so the JIT cannot
+//* drop the work as dead code.
+//*
+//* The results are compared with benchmark-baseline.csv, which holds
+//* each case's ns/op and its spread: the range of the fork medians as a
+//* fraction of their median.  A case may be slower than its baseline by
+//* TOLERANCE or by the two spreads together, whichever is more, since a
+//* noisy case cannot be judged more finely than its noise.  A case over
+//* that is measured again in FORKS more JVMs, and is reported as a
+//* regression only if the median of all its forks is still over; the
+//* exit status is 1 if there was one.  A case whose recorded spread is
+//* over GATED_SPREAD would go unflagged until it was far slower, so it
+//* is reported but never counted as a regression.  Run with
+//*   java Benchmarks [record] [namePrefix]
+//* "record" rewrites the baseline with this run's results.  Baselines
+//* only mean something on the machine they were recorded on.
+//======================================================================
+class Benchmarks {
+    private static final Path BASELINE = Paths.get("benchmark-baseline.csv");
+    private static final double TOLERANCE = 0.1;
+    private static final int WARMUP = 3;
+    private static final int MEASURED = 5;
+    private static final int FORKS = 3;
+    private static final long ROUND_NANOS = 500000000L;  // least time a round runs for
+    private static final double GATED_SPREAD = 0.15;     // noisier cases are only reported
+
+    // One round of a case: performs ops operations and returns a checksum
+    private interface Round {
+        long run();
+    }
+
+    private static final class Case {
+        final String name;
+        final long ops;
+        final Round round;
+
+        Case(String name, long ops, Round round) {
+            this.name = name;
+            this.ops = ops;
+            this.round = round;
+        }
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 2 && args[0].equals("fork")) {
+            // In a forked JVM: measure one case and print its ns/op and checksum
+            for (Case c : cases()) {
+                if (c.name.equals(args[1])) {
+                    measure(c);
+                }
+            }
+            return;
+        }
+        boolean record = args.length > 0 && args[0].equals("record");
+        String prefix = args.length > (record ? 1 : 0) ? args[record ? 1 : 0] : "";
+
+        Map<String, double[]> baseline = readBaseline();
+        Map<String, double[]> results = new LinkedHashMap<>();
+        int regressions = 0;
+        System.out.println("case,ns/op,spread,baseline,change,checksum");
+        for (Case c : cases()) {
+            if (!c.name.startsWith(prefix)) {
+                continue;
+            }
+            // The median over forks, since JIT decisions vary from one JVM to the next
+            String[] checksum = new String[1];
+            double[] forks = forks(c, FORKS, checksum);
+            double[] result = summarize(forks);
+
+            double[] base = baseline.get(c.name);
+            String change = "";
+            if (base != null) {
+                boolean gated = base[1] <= GATED_SPREAD;
+                double allowed = Math.max(TOLERANCE, base[1] + result[1]);
+                if (!record && gated && result[0] / base[0] - 1 > allowed) {
+                    // Likely noise; settle it with more forks
+                    double[] more = forks(c, FORKS, checksum);
+                    double[] all = Arrays.copyOf(forks, 2 * FORKS);
+                    System.arraycopy(more, 0, all, FORKS, FORKS);
+                    result = summarize(all);
+                    allowed = Math.max(TOLERANCE, base[1] + result[1]);
+                }
+                double ratio = result[0] / base[0] - 1;
+                change = String.format("%+.0f%%", 100 * ratio)
+                        + (!gated ? " (not gated)" : ratio > allowed ? " REGRESSION" : "");
+                if (gated && ratio > allowed) {
+                    regressions++;
+                }
+            }
+            results.put(c.name, result);
+            System.out.println(c.name + "," + String.format("%.1f", result[0]) + ","
+                    + String.format("%.0f%%", 100 * result[1]) + ","
+                    + (base == null ? "" : String.format("%.1f", base[0])) + "," + change + "," + checksum[0]);
+        }
+
+        if (record) {
+            baseline.putAll(results);
+            writeBaseline(baseline);
+            System.out.println("Recorded " + results.size() + " cases in " + BASELINE);
+        } else if (regressions > 0) {
+            System.out.println(regressions + " case(s) slower than the baseline by more than their noise");
+            System.exit(1);
+        }
+    }
+
+    // Each fork's median ns/op, sorted; the checksum is left in checksum[0]
+    private static double[] forks(Case c, int count, String[] checksum) {
+        double[] forks = new double[count];
+        for (int f = 0; f < count; f++) {
+            String[] measured = fork(c.name);
+            forks[f] = Double.parseDouble(measured[0]);
+            checksum[0] = measured[1];
+        }
+        Arrays.sort(forks);
+        return forks;
+    }
+
+    // The median of sorted fork medians, and their range as a fraction of it
+    private static double[] summarize(double[] forks) {
+        Arrays.sort(forks);
+        double median = forks[forks.length / 2];
+        return new double[]{median, (forks[forks.length - 1] - forks[0]) / median};
+    }
+
+    // Run a case in a JVM of its own, so that what the JIT learned from the other
+    // cases does not change how this one is compiled
+    private static String[] fork(String name) {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        ProcessBuilder builder = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                Benchmarks.class.getName(), "fork", name);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+        try {
+            Process process = builder.start();
+            String output;
+            try (BufferedReader in = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                output = in.readLine();
+            }
+            if (process.waitFor() != 0 || output == null) {
+                throw new IllegalStateException("Benchmark " + name + " failed");
+            }
+            return output.split(",");
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot start a JVM for " + name, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running " + name, e);
+        }
+    }
+
+    private static void measure(Case c) {
+        long[] checksum = new long[1];
+        for (int i = 0; i < WARMUP; i++) {
+            round(c, checksum);
+        }
+        double[] times = new double[MEASURED];
+        for (int i = 0; i < MEASURED; i++) {
+            times[i] = round(c, checksum);
+        }
+        Arrays.sort(times);
+        System.out.println(times[MEASURED / 2] + "," + Long.toHexString(checksum[0]));
+    }
+
+    // One round: the case's operations, repeated until ROUND_NANOS have passed so that
+    // short cases are not timed over a few milliseconds.  Returns ns/op
+    private static double round(Case c, long[] checksum) {
+        long start = System.nanoTime();
+        long ops = 0;
+        long elapsed;
+        do {
+            checksum[0] += c.round.run();
+            ops += c.ops;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < ROUND_NANOS);
+        return (double) elapsed / ops;
+    }
+
+    private static List<Case> cases() {
+        List<Case> cases = new ArrayList<>();
+
+        // Immune genomes are 50 bits in the model and diseases 1 to 10; longer ones show the scaling
+        int[][] genomeLengths = {{50, 10}, {200, 10}, {1000, 10}, {1000, 100}};
+        for (int[] lengths : genomeLengths) {
+            cases.add(hammingMin(lengths[0], lengths[1]));
+            cases.add(hammingCloser(lengths[0], lengths[1]));
+        }
+
+        for (int vision : new int[]{1, 6, 20}) {
+            for (double density : new double[]{0.1, 0.5, 0.9}) {
+                cases.add(move(100, vision, density));
+            }
+        }
+
+        cases.add(getCellAt(400));
+        cases.add(resourceLevels(400));
+
+        for (String scheduler : new String[]{"heap", "ladder"}) {
+            for (int events : new int[]{10000, 1000000}) {
+                cases.add(new Case("calendar." + scheduler + "." + events, 2000000,
+                        () -> SchedulerBenchmark.hold(Scheduler.forName(scheduler), events, 2000000)));
+            }
+        }
+
+        cases.add(engine(40, 400, 100));
+        cases.add(engine(100, 2500, 20));
+        cases.add(engine(300, 22500, 3));
+        return cases;
+    }
+
+    private static Genome randomGenome(Random rng, int length) {
+        Genome g = new HeapGenome(length);
+        for (int i = 0; i < length; i++) {
+            if (rng.nextBoolean()) {
+                g.flip(i);
+            }
+        }
+        return g;
+    }
+
+    private static Case hammingMin(int immuneLength, int diseaseLength) {
+        Random rng = new Random(8675309);
+        Genome[] immune = new Genome[64];
+        Genome[] disease = new Genome[64];
+        for (int i = 0; i < immune.length; i++) {
+            immune[i] = randomGenome(rng, immuneLength);
+            disease[i] = randomGenome(rng, diseaseLength);
+        }
+        int ops = 200000;
+        return new Case("hamming.min." + immuneLength + "x" + diseaseLength, ops, () -> {
+            long sum = 0;
+            for (int i = 0; i < ops; i++) {
+                sum += HammingDistance.getMinHammingDistance(immune[i & 63], disease[(i >>> 6) & 63])[0];
+            }
+            return sum;
+        });
+    }
+
+    // closerByOne with the distance and offset known, as the immune response calls it;
+    // the flipped bit is flipped back so every call sees the same genomes
+    private static Case hammingCloser(int immuneLength, int diseaseLength) {
+        Random rng = new Random(8675309);
+        Genome[] immune = new Genome[64];
+        Genome[] disease = new Genome[64];
+        int[][] best = new int[64][];
+        for (int i = 0; i < immune.length; i++) {
+            immune[i] = randomGenome(rng, immuneLength);
+            disease[i] = randomGenome(rng, diseaseLength);
+            best[i] = HammingDistance.getMinHammingDistance(immune[i], disease[i]);
+        }
+        int ops = 10000000;
+        return new Case("hamming.closer." + immuneLength + "x" + diseaseLength, ops, () -> {
+            long sum = 0;
+            for (int i = 0; i < ops; i++) {
+                int k = i & 63;
+                int flipped = HammingDistance.closerByOne(immune[k], disease[k], best[k][0], best[k][1]);
+                if (flipped >= 0) {
+                    immune[k].flip(flipped);
+                }
+                sum += flipped;
+            }
+            return sum;
+        });
+    }
+
+    // Agents of one vision covering the given fraction of a partly depleted landscape
+    private static Case move(int gridSize, int vision, double density) {
+        Random rng = new Random(8675309);
+        Landscape landscape = new Landscape(gridSize);
+        Agent[] agents = new Agent[(int) (gridSize * gridSize * density)];
+        Census census = new Census(0);
+        AgentStore store = new AgentStore(new DiseaseRegistry(0), 8);
+        for (int i = 0; i < agents.length; i++) {
+            int cell;
+            do {
+                cell = rng.nextInt(gridSize * gridSize);
+            } while (landscape.isOccupied(cell));
+            agents[i] = new Agent(store, i, 0, vision, 1, 10, 100, 0, new HeapGenome(8), new RandomStream(rng.nextLong()), census);
+            agents[i].setRowCol(landscape.rowOf(cell), landscape.colOf(cell));
+            landscape.setOccupant(cell, agents[i]);
+        }
+        for (int cell = 0; cell < gridSize * gridSize; cell++) {
+            if (rng.nextInt(3) == 0) {
+                landscape.removeResources(cell, rng.nextDouble() * 10);
+            }
+        }
+
+        // Every call covers the same span of time, so a round repeated more often does not
+        // see the landscape more regrown
+        int ops = 500000;
+        return new Case("move.v" + vision + ".d" + density, ops, () -> {
+            long sum = 0;
+            double time = 10;
+            for (int i = 0; i < ops; i++) {
+                Agent a = agents[(int) ((i * 0x9e3779b9L & 0xffffffffL) % agents.length)];
+                time += 1e-6;
+                a.move(landscape, time);
+                sum += a.getRow();
+            }
+            return sum;
+        });
+    }
+
+    private static Case getCellAt(int gridSize) {
+        Landscape landscape = new Landscape(gridSize);
+        int ops = 20000000;
+        return new Case("landscape.getCellAt." + gridSize, ops, () -> {
+            double sum = 0;
+            for (int i = 0; i < ops; i++) {
+                int row = (int) ((i * 0x9e3779b9L & 0xffffffffL) % gridSize);
+                sum += landscape.getCellAt(row, i % gridSize).getResourceLevel(5);
+            }
+            return (long) sum;
+        });
+    }
+
+    // The bulk query the canvas draws from, per cell
+    private static Case resourceLevels(int gridSize) {
+        Landscape landscape = new Landscape(gridSize);
+        double[] levels = new double[gridSize];
+        return new Case("landscape.resourceLevels." + gridSize, (long) gridSize * gridSize * 10, () -> {
+            double sum = 0;
+            for (int repeat = 0; repeat < 10; repeat++) {
+                for (int row = 0; row < gridSize; row++) {
+                    landscape.getResourceLevels(row, 5, levels);
+                    sum += levels[row];
+                }
+            }
+            return (long) sum;
+        });
+    }
+
+    // A whole simulation on the serial engine; an operation is one handled event
+    private static Case engine(int gridSize, int numAgents, double maxTime) {
+        Simulation probe = new Simulation(gridSize, numAgents, 8675309);
+        probe.runUntil(maxTime);
+        long events = 0;
+        for (EventKind kind : EventKind.VALUES) {
+            events += probe.getCensus().getEvents(kind);
+        }
+        return new Case("engine." + gridSize + "x" + numAgents, events, () -> {
+            Simulation simulation = new Simulation(gridSize, numAgents, 8675309);
+            simulation.runUntil(maxTime);
+            return simulation.getResult().getNumHealthy();
+        });
+    }
+
+    // ns/op and spread by case; a line without a spread has none
+    private static Map<String, double[]> readBaseline() {
+        Map<String, double[]> baseline = new LinkedHashMap<>();
+        if (!Files.exists(BASELINE)) {
+            return baseline;
+        }
+        try {
+            for (String line : Files.readAllLines(BASELINE, StandardCharsets.UTF_8)) {
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                baseline.put(fields[0], new double[]{Double.parseDouble(fields[1]),
+                        fields.length > 2 ? Double.parseDouble(fields[2]) : 0});
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read " + BASELINE, e);
+        }
+        return baseline;
+    }
+
+    private static void writeBaseline(Map<String, double[]> baseline) {
+        List<String> lines = new ArrayList<>();
+        lines.add("# case,ns/op,spread -- written by 'java Benchmarks record'");
+        baseline.forEach((name, result) -> lines.add(name + "," + String.format("%.1f", result[0])
+                + "," + String.format("%.3f", result[1])));
+        try {
+            Files.write(BASELINE, lines, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write " + BASELINE, e);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+import java.util.Arrays;
+
+//======================================================================
+//* Brown's calendar queue.  Time is cut into buckets of equal width that
+//* wrap around like the days of a year; each bucket holds a sorted list
+//* of its events.  With the width tuned to the spacing of the events at
+//* the front of the queue, push and pop take O(1) on average.
+//*
+//* Events are identified with "virtual buckets", floor(time / width),
+//* so the bucket an event is filed under and the bucket the dequeue scan
+//* looks for it in are computed by the same expression.
+//======================================================================
+class CalendarQueue implements Scheduler {
+    private static final int MIN_BUCKETS = 2;
+
+    private final EventPool pool = new EventPool();
+    private int[] buckets = newBuckets(MIN_BUCKETS);
+    private double width = 1.0;
+    private long current = 0;  // virtual bucket the dequeue scan is at; no event is earlier
+    private int size = 0;
+    private long nextSeq = 0;
+
+    @Override
+    public void push(double t, EventKind k, int target, int gen) {
+        int e = pool.alloc(t, nextSeq++, k, target, gen);
+        long vb = virtualBucket(t);
+        if (vb < current) {
+            current = vb;
+        }
+        int b = bucketOf(vb);
+        buckets[b] = pool.insertSorted(buckets[b], e);
+
+        if (++size > 2 * buckets.length) {
+            resize(2 * buckets.length);
+        }
+    }
+
+    @Override
+    public void pop(Event into) {
+        assert size > 0;
+        int b = findEarliestBucket();
+        int e = buckets[b];
+        buckets[b] = pool.next[e];
+        pool.copyTo(e, into);
+        pool.free(e);
+
+        if (--size < buckets.length / 2 && buckets.length > MIN_BUCKETS) {
+            resize(buckets.length / 2);
+        }
+    }
+
+    @Override
+    public void peek(Event into) {
+        assert size > 0;
+        pool.copyTo(buckets[findEarliestBucket()], into);
+    }
+
+    // Scan one year of buckets from the current one; if none holds an event of its
+    // day, fall back to searching every bucket head for the minimum
+    private int findEarliestBucket() {
+        for (int i = 0; i < buckets.length; i++) {
+            int b = bucketOf(current);
+            int head = buckets[b];
+            if (head != EventPool.NONE && virtualBucket(pool.time[head]) == current) {
+                return b;
+            }
+            current++;
+        }
+
+        int best = EventPool.NONE;
+        int bestBucket = 0;
+        for (int b = 0; b < buckets.length; b++) {
+            int head = buckets[b];
+            if (head != EventPool.NONE && (best == EventPool.NONE || pool.before(head, best))) {
+                best = head;
+                bestBucket = b;
+            }
+        }
+        current = virtualBucket(pool.time[best]);
+        return bestBucket;
+    }
+
+    private long virtualBucket(double t) {
+        return (long) Math.floor(t / width);
+    }
+
+    private int bucketOf(long vb) {
+        return (int) Math.floorMod(vb, (long) buckets.length);
+    }
+
+    // Rebuild with a new bucket count and a width estimated from the front of the queue
+    private void resize(int numBuckets) {
+        int[] events = new int[size];
+        int n = 0;
+        for (int head : buckets) {
+            for (int e = head; e != EventPool.NONE; e = pool.next[e]) {
+                events[n++] = e;
+            }
+        }
+
+        double newWidth = estimateWidth(events);
+        if (newWidth > 0) {
+            width = newWidth;
+        }
+        buckets = newBuckets(numBuckets);
+
+        long earliest = Long.MAX_VALUE;
+        for (int e : events) {
+            long vb = virtualBucket(pool.time[e]);
+            earliest = Math.min(earliest, vb);
+            int b = bucketOf(vb);
+            buckets[b] = pool.insertSorted(buckets[b], e);
+        }
+        if (n > 0) {
+            current = earliest;
+        }
+    }
+
+    // Brown's heuristic: three times the mean gap between the first events,
+    // ignoring gaps more than twice the mean
+    private double estimateWidth(int[] events) {
+        int sample = Math.min(events.length, 25);
+        if (sample < 2) {
+            return 0;
+        }
+        double[] times = new double[events.length];
+        for (int i = 0; i < events.length; i++) {
+            times[i] = pool.time[events[i]];
+        }
+        Arrays.sort(times);
+
+        double mean = (times[sample - 1] - times[0]) / (sample - 1);
+        double total = 0;
+        int count = 0;
+        for (int i = 1; i < sample; i++) {
+            double gap = times[i] - times[i - 1];
+            if (gap <= 2 * mean) {
+                total += gap;
+                count++;
+            }
+        }
+        return count == 0 ? 0 : 3 * total / count;
+    }
+
+    private static int[] newBuckets(int n) {
+        int[] b = new int[n];
+        Arrays.fill(b, EventPool.NONE);
+        return b;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
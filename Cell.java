@@ -1,62 +1,63 @@
+//======================================================================
+//* A view of one cell of a Landscape.  The cell's state lives in the
+//* landscape's arrays, so a Cell is cheap to create and any number of
+//* views of the same cell see the same resources and occupant.
+//======================================================================
 public class Cell implements Comparable<Cell> {
 
-    private final double resourceCapacity;
-    private final double regrowthRate;
-    private double lastTimeDepleted;
-    private boolean occupied;
-    private final int x;
-    private final int y;
+    private final Landscape landscape;
+    private final int index;
 
-    public Cell(double regrowthRate, double resourceCapacity, int x, int y) {
-        this.resourceCapacity = resourceCapacity;
-        this.regrowthRate = regrowthRate;
-        this.x = x;
-        this.y = y;
-        this.lastTimeDepleted = 0;
+    public Cell(Landscape landscape, int index) {
+        this.landscape = landscape;
+        this.index = index;
+    }
+
+    public int getIndex() {
+        return this.index;
     }
 
     public double getRegrowthRate() {
-        return this.regrowthRate;
+        return landscape.getRegrowthRate(index);
     }
 
     public int getRow() {
-        return this.x;
+        return landscape.rowOf(index);
     }
 
     public int getCol() {
-        return this.y;
+        return landscape.colOf(index);
     }
 
     public double getCapacity() {
-        return this.resourceCapacity;
+        return landscape.getCapacity(index);
     }
 
     public boolean isOccupied() {
-        return occupied;
+        return landscape.isOccupied(index);
     }
 
-    public void setOccupied(boolean occupied) {
-        this.occupied = occupied;
+    public Agent getOccupant() {
+        return landscape.getOccupant(index);
+    }
+
+    public void setOccupant(Agent occupant) {
+        landscape.setOccupant(index, occupant);
     }
 
     public double getResourceLevel(double time) {
-        if(lastTimeDepleted == 0){
-            return this.resourceCapacity;
-        }
-        return Math.min(this.resourceCapacity, (time - lastTimeDepleted) * this.regrowthRate);
+        return landscape.getResourceLevel(index, time);
     }
 
     public double removeResources(double time) {
-        double eaten = getResourceLevel(time);
-        lastTimeDepleted = time;
-        return eaten;
+        return landscape.removeResources(index, time);
     }
 
     @Override
     public int compareTo(Cell o) {
-        if (this.resourceCapacity == ((Cell) o).getCapacity()) {
+        if (this.getCapacity() == o.getCapacity()) {
             return 0;
         }
-        return (this.getCapacity() > ((Cell) o).getCapacity()) ? 1 : -1;
+        return (this.getCapacity() > o.getCapacity()) ? 1 : -1;
     }
 }
@@ -0,0 +1,129 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+//======================================================================
+//* Running counts of a simulation's population, kept up to date as
+//* agents are born, die, catch and clear diseases, and of the events
+//* handled so far.  Reading them needs no pass over the agents.
+//*
+//* The parallel engines update the counts from several threads at once,
+//* so they are atomic; uncontended, that costs a few nanoseconds.
+//======================================================================
+final class Census {
+    private final AtomicInteger population = new AtomicInteger();
+    private final AtomicInteger infected = new AtomicInteger();  // agents with at least one disease
+    private final AtomicIntegerArray infectedBy;                  // agents with each disease, by id
+    private final LongAdder[] events = new LongAdder[EventKind.AGENT_KINDS];
+
+    // Agents that became infected or healthy since the last drainHealthChanges(), logged
+    // only once trackHealthChanges() has been called
+    private int[] healthLog;
+    private final AtomicInteger healthCount = new AtomicInteger();
+
+    Census(int diseases) {
+        infectedBy = new AtomicIntegerArray(diseases);
+        for (int k = 0; k < events.length; k++) {
+            events[k] = new LongAdder();
+        }
+    }
+
+    void born() {
+        population.incrementAndGet();
+    }
+
+    void died(DiseaseSet infections) {
+        population.decrementAndGet();
+        if (!infections.isEmpty()) {
+            infected.decrementAndGet();
+        }
+        for (int i = infections.nextId(0); i >= 0; i = infections.nextId(i + 1)) {
+            infectedBy.decrementAndGet(i);
+        }
+    }
+
+    void caught(int agent, Disease d, boolean firstInfection) {
+        if (firstInfection) {
+            infected.incrementAndGet();
+            logHealthChange(agent);
+        }
+        infectedBy.incrementAndGet(d.getId());
+    }
+
+    void cleared(int agent, Disease d, boolean lastInfection) {
+        if (lastInfection) {
+            infected.decrementAndGet();
+            logHealthChange(agent);
+        }
+        infectedBy.decrementAndGet(d.getId());
+    }
+
+    //======================================================================
+    //* void trackHealthChanges(int capacity)
+    //* int drainHealthChanges(int[] into)
+    //* Keep a log of the handles of agents that become infected or
+    //* healthy from now on, so that a display can update just their cells.
+    //* An agent that changes back and forth is logged each time.  The log
+    //* holds capacity handles; drainHealthChanges() copies the handles
+    //* logged since the last drain into `into` and returns how many there
+    //* are, or -1 if the log overfilled and the caller must look at every
+    //* agent.  Only drain while no engine is running.
+    //======================================================================
+    void trackHealthChanges(int capacity) {
+        if (healthLog == null || healthLog.length < capacity) {
+            healthLog = new int[capacity];
+            healthCount.set(0);
+        }
+    }
+
+    int drainHealthChanges(int[] into) {
+        int n = healthCount.getAndSet(0);
+        if (n > healthLog.length) {
+            return -1;
+        }
+        System.arraycopy(healthLog, 0, into, 0, n);
+        return n;
+    }
+
+    private void logHealthChange(int agent) {
+        if (healthLog != null) {
+            int n = healthCount.getAndIncrement();
+            if (n < healthLog.length) {
+                healthLog[n] = agent;
+            }
+        }
+    }
+
+    void eventHandled(EventKind kind) {
+        events[kind.ordinal()].increment();
+    }
+
+    // Count events handled before a checkpoint was restored
+    void eventsHandled(EventKind kind, long count) {
+        events[kind.ordinal()].add(count);
+    }
+
+    int getPopulation() {
+        return population.get();
+    }
+
+    int getInfected() {
+        return infected.get();
+    }
+
+    int getHealthy() {
+        return getPopulation() - getInfected();
+    }
+
+    int getDiseaseCount() {
+        return infectedBy.length();
+    }
+
+    int getInfectedBy(int disease) {
+        return infectedBy.get(disease);
+    }
+
+    long getEvents(EventKind kind) {
+        return events[kind.ordinal()].sum();
+    }
+}
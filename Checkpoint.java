@@ -0,0 +1,58 @@
+import java.io.IOException;
+import java.nio.file.Path;
+
+//======================================================================
+//* Saves the whole state of a Simulation to a file and restores it: the
+//* clock, the calendar, the agents with their genomes, caches, diseases
+//* and random streams, the depletion time of every cell, and the
+//* simulation's own random stream.  A restored simulation carries on
+//* exactly as the saved one would have, with any engine and scheduler.
+//*
+//* The file is a little-endian binary format, written and read through
+//* memory-mapped windows:
+//*   int MAGIC, int VERSION, then the body written by Simulation.writeTo()
+//* VERSION goes up whenever the body changes; older files are refused
+//* rather than misread.
+//*
+//* fork() restores with fresh random streams, so a sweep can run many
+//* independent replications on from one burn-in.
+//======================================================================
+final class Checkpoint {
+    private static final int MAGIC = 0x434d4953;  // "SIMC" as little-endian bytes
+    static final int VERSION = 4;
+
+    private Checkpoint() {
+    }
+
+    // Only call between runs of an engine
+    static void save(Simulation simulation, Path file) throws IOException {
+        try (CheckpointWriter out = new CheckpointWriter(file)) {
+            out.putInt(MAGIC);
+            out.putInt(VERSION);
+            simulation.writeTo(out);
+        }
+    }
+
+    static Simulation load(Path file) throws IOException {
+        return read(file, null);
+    }
+
+    // The saved simulation, continuing with random streams drawn from seed
+    static Simulation fork(Path file, int seed) throws IOException {
+        return read(file, seed);
+    }
+
+    private static Simulation read(Path file, Integer forkSeed) throws IOException {
+        try (CheckpointReader in = new CheckpointReader(file)) {
+            if (in.getInt() != MAGIC) {
+                throw new IOException(file + " is not a simulation checkpoint");
+            }
+            int version = in.getInt();
+            if (version != VERSION) {
+                throw new IOException(file + " is a version " + version + " checkpoint; this build reads version "
+                        + VERSION);
+            }
+            return Simulation.readFrom(in, forkSeed);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+//======================================================================
+//* Reads a file written by CheckpointWriter through a read-only
+//* memory-mapped window that slides along the file.  Running past the
+//* end of the file throws EOFException.
+//======================================================================
+final class CheckpointReader implements AutoCloseable {
+    private static final int SMALL = CheckpointWriter.SMALL;
+
+    private final FileChannel channel;
+    private final long size;
+    private MappedByteBuffer buffer;
+    private long windowStart = 0;
+
+    CheckpointReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        size = channel.size();
+        map(0);
+    }
+
+    private void map(long start) throws IOException {
+        windowStart = start;
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CheckpointWriter.WINDOW, size - start));
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Slide the window up to the current position if fewer than n bytes are left in it
+    private void ensure(int n) throws IOException {
+        if (buffer.remaining() < n) {
+            map(windowStart + buffer.position());
+            if (buffer.remaining() < n) {
+                throw new EOFException("Checkpoint is truncated");
+            }
+        }
+    }
+
+    boolean getBoolean() throws IOException {
+        ensure(1);
+        return buffer.get() != 0;
+    }
+
+    int getInt() throws IOException {
+        ensure(4);
+        return buffer.getInt();
+    }
+
+    long getLong() throws IOException {
+        ensure(8);
+        return buffer.getLong();
+    }
+
+    double getDouble() throws IOException {
+        ensure(8);
+        return buffer.getDouble();
+    }
+
+    // Fill a[from, to) as one bulk copy per window
+    void getInts(int[] a, int from, int to) throws IOException {
+        if (to - from <= SMALL) {
+            for (; from < to; from++) {
+                a[from] = getInt();
+            }
+            return;
+        }
+        while (from < to) {
+            ensure(4);
+            int n = Math.min(to - from, buffer.remaining() / 4);
+            buffer.asIntBuffer().get(a, from, n);
+            buffer.position(buffer.position() + 4 * n);
+            from += n;
+        }
+    }
+
+    void getLongs(long[] a, int from, int to) throws IOException {
+        if (to - from <= SMALL) {
+            for (; from < to; from++) {
+                a[from] = getLong();
+            }
+            return;
+        }
+        while (from < to) {
+            ensure(8);
+            int n = Math.min(to - from, buffer.remaining() / 8);
+            buffer.asLongBuffer().get(a, from, n);
+            buffer.position(buffer.position() + 8 * n);
+            from += n;
+        }
+    }
+
+    void getDoubles(double[] a, int from, int to) throws IOException {
+        if (to - from <= SMALL) {
+            for (; from < to; from++) {
+                a[from] = getDouble();
+            }
+            return;
+        }
+        while (from < to) {
+            ensure(8);
+            int n = Math.min(to - from, buffer.remaining() / 8);
+            buffer.asDoubleBuffer().get(a, from, n);
+            buffer.position(buffer.position() + 8 * n);
+            from += n;
+        }
+    }
+
+    // A count read from the file, checked before it is used to size an array
+    int getCount(int max) throws IOException {
+        int n = getInt();
+        if (n < 0 || n > max) {
+            throw new IOException("Corrupt checkpoint: count " + n + " out of range");
+        }
+        return n;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,123 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+//======================================================================
+//* Writes a checkpoint file through a memory-mapped window that slides
+//* along the file as it fills, so the size of the checkpoint need not
+//* be known up front.  Values are little-endian.  close() cuts the file
+//* back to what was written.
+//======================================================================
+final class CheckpointWriter implements AutoCloseable {
+    static final int WINDOW = 64 << 20;
+    static final int SMALL = 64;  // arrays up to this long are copied element by element, without a view buffer
+
+    private final FileChannel channel;
+    private MappedByteBuffer buffer;
+    private long windowStart = 0;
+
+    CheckpointWriter(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        map(0);
+    }
+
+    private void map(long start) throws IOException {
+        windowStart = start;
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, start, WINDOW);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Slide the window up to the current position if fewer than n bytes are left in it
+    private void ensure(int n) throws IOException {
+        if (buffer.remaining() < n) {
+            map(position());
+        }
+    }
+
+    long position() {
+        return windowStart + buffer.position();
+    }
+
+    void putBoolean(boolean b) throws IOException {
+        ensure(1);
+        buffer.put(b ? (byte) 1 : (byte) 0);
+    }
+
+    void putInt(int i) throws IOException {
+        ensure(4);
+        buffer.putInt(i);
+    }
+
+    void putLong(long l) throws IOException {
+        ensure(8);
+        buffer.putLong(l);
+    }
+
+    void putDouble(double d) throws IOException {
+        ensure(8);
+        buffer.putDouble(d);
+    }
+
+    // Elements [from, to), as one bulk copy per window
+    void putInts(int[] a, int from, int to) throws IOException {
+        if (to - from <= SMALL) {
+            for (; from < to; from++) {
+                putInt(a[from]);
+            }
+            return;
+        }
+        while (from < to) {
+            ensure(4);
+            int n = Math.min(to - from, buffer.remaining() / 4);
+            buffer.asIntBuffer().put(a, from, n);
+            buffer.position(buffer.position() + 4 * n);
+            from += n;
+        }
+    }
+
+    void putLongs(long[] a, int from, int to) throws IOException {
+        if (to - from <= SMALL) {
+            for (; from < to; from++) {
+                putLong(a[from]);
+            }
+            return;
+        }
+        while (from < to) {
+            ensure(8);
+            int n = Math.min(to - from, buffer.remaining() / 8);
+            buffer.asLongBuffer().put(a, from, n);
+            buffer.position(buffer.position() + 8 * n);
+            from += n;
+        }
+    }
+
+    void putDoubles(double[] a, int from, int to) throws IOException {
+        if (to - from <= SMALL) {
+            for (; from < to; from++) {
+                putDouble(a[from]);
+            }
+            return;
+        }
+        while (from < to) {
+            ensure(8);
+            int n = Math.min(to - from, buffer.remaining() / 8);
+            buffer.asDoubleBuffer().put(a, from, n);
+            buffer.position(buffer.position() + 8 * n);
+            from += n;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            buffer.force();
+            channel.truncate(position());
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+//======================================================================
+//* Benchmark of finding an agent's contacts, the four neighbours
+//* Agent.contactNeighbours() trades diseases with, two ways:
+//*   scan      the old path: every agent in the population is compared
+//*             with the four neighbouring cells
+//*   occupant  the current path: the Landscape's occupant of each of
+//*             the four cells is read
+//* Agents fill a quarter of the grid, as in the model, at populations
+//* of 10k, 100k and 1M.  The scan is a plain loop, which is kinder to
+//* it than the streams it used to be written with.  Both paths must
+//* find the same neighbours for every agent looked up, or the benchmark
+//* exits with status 1; finding them is all that is timed, since what
+//* happens on contact is the same either way.  Prints ns per lookup.
+//* Run with
+//*   java ContactBenchmark [population...]
+//======================================================================
+class ContactBenchmark {
+    private static final int ROUNDS = 3;
+    private static final long SCAN_WORK = 200000000L;  // agents the scan visits per round
+    private static final int[] ROW_STEP = {1, -1, 0, 0};
+    private static final int[] COL_STEP = {0, 0, 1, -1};
+
+    public static void main(String[] args) {
+        int[] sizes = {10000, 100000, 1000000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.println("agents,grid,scan ns/lookup,occupant ns/lookup,speedup");
+        for (int n : sizes) {
+            int gridSize = (int) Math.ceil(Math.sqrt(4.0 * n));
+            Random rng = new Random(8675309);
+            Landscape landscape = new Landscape(gridSize);
+            List<Agent> agentList = populate(landscape, n, rng);
+            int[] lookups = new int[(int) Math.max(10, SCAN_WORK / n)];
+            for (int i = 0; i < lookups.length; i++) {
+                lookups[i] = rng.nextInt(n);
+            }
+
+            long bestScan = Long.MAX_VALUE;
+            long bestOccupant = Long.MAX_VALUE;
+            // The first rounds only warm up the JIT; keep the fastest
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                long scanned = scan(agentList, lookups, gridSize);
+                bestScan = Math.min(bestScan, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                long read = 0;
+                // The cheap path is repeated so that it is timed over a similar span
+                int repeats = Math.max(1, n / 10);
+                for (int r = 0; r < repeats; r++) {
+                    read = occupants(landscape, agentList, lookups);
+                }
+                bestOccupant = Math.min(bestOccupant, (System.nanoTime() - start) / repeats);
+
+                if (scanned != read) {
+                    System.out.println("MISMATCH at " + n + " agents: the scan found " + scanned
+                            + " neighbours, the occupants " + read);
+                    System.exit(1);
+                }
+            }
+            double scanNs = (double) bestScan / lookups.length;
+            double occupantNs = (double) bestOccupant / lookups.length;
+            System.out.println(n + "," + gridSize + "," + String.format("%.1f", scanNs) + ","
+                    + String.format("%.1f", occupantNs) + "," + String.format("%.0fx", scanNs / occupantNs));
+        }
+    }
+
+    private static List<Agent> populate(Landscape landscape, int n, Random rng) {
+        AgentStore store = new AgentStore(new DiseaseRegistry(0), 8);
+        List<Agent> agentList = new ArrayList<>(n);
+        for (int id = 0; id < n; id++) {
+            store.allocate(id);
+            Agent a = new Agent(store, id, 0, 1, 1, 10, 100, 0, new HeapGenome(8),
+                    new RandomStream(rng.nextLong()), new Census(0));
+            int cell = landscape.getRandomFreeCell(new RandomStream(rng.nextLong()));
+            a.setRowCol(landscape.rowOf(cell), landscape.colOf(cell));
+            landscape.setOccupant(cell, a);
+            agentList.add(a);
+        }
+        return agentList;
+    }
+
+    // The old path: compare every agent with the four cells around the looked-up one.
+    // Returns a checksum of the neighbours found: their count plus their ids.
+    private static long scan(List<Agent> agentList, int[] lookups, int gridSize) {
+        long found = 0;
+        int[] rows = new int[4];
+        int[] cols = new int[4];
+        for (int lookup : lookups) {
+            Agent a = agentList.get(lookup);
+            for (int dir = 0; dir < 4; dir++) {
+                rows[dir] = Math.floorMod(a.getRow() + ROW_STEP[dir], gridSize);
+                cols[dir] = Math.floorMod(a.getCol() + COL_STEP[dir], gridSize);
+            }
+            for (Agent neighbor : agentList) {
+                for (int dir = 0; dir < 4; dir++) {
+                    if (neighbor.getRow() == rows[dir] && neighbor.getCol() == cols[dir]) {
+                        found += 1 + neighbor.getID();
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    // The current path: four occupant reads, as Agent.contactNeighbours() makes them
+    private static long occupants(Landscape landscape, List<Agent> agentList, int[] lookups) {
+        long found = 0;
+        for (int lookup : lookups) {
+            Agent a = agentList.get(lookup);
+            for (int dir = 0; dir < 4; dir++) {
+                Agent neighbor = landscape.getOccupant(landscape.index(a.getRow() + ROW_STEP[dir],
+                        a.getCol() + COL_STEP[dir]));
+                if (neighbor != null) {
+                    found += 1 + neighbor.getID();
+                }
+            }
+        }
+        return found;
+    }
+}
@@ -1,17 +1,30 @@
 public class Disease {
-    private final String genome;
+    private final int id;  // index of the disease in its simulation, 0 up to the number of diseases
+    private final Genome genome;
     private final double metabolicPenalty;
 
-    public Disease(String genome, double metabolicPenalty) {
+    public Disease(int id, Genome genome, double metabolicPenalty) {
+        this.id = id;
         this.genome = genome;
         this.metabolicPenalty = metabolicPenalty;
     }
 
-    public String getGenome() {
+    public int getId() {
+        return id;
+    }
+
+    public Genome getGenome() {
         return genome;
     }
 
     public double getMetabolicPenalty() {
         return metabolicPenalty;
     }
+
+    // Equality stays identity: a simulation's DiseaseRegistry makes one Disease per id.
+    // The hash is the id rather than the identity hash so that it is the same in every run
+    @Override
+    public int hashCode() {
+        return id;
+    }
 }
@@ -0,0 +1,50 @@
+//======================================================================
+//* The diseases of one simulation, numbered 0, 1, 2, ... in the order
+//* they are registered.  Agents hold sets of diseases as bitsets of
+//* these ids (see DiseaseSet), so a registry has a fixed capacity,
+//* known before any agent is made, that sizes those bitsets.
+//======================================================================
+final class DiseaseRegistry {
+    // Bitsets of this many diseases take 8KB per set
+    static final int MAX_CAPACITY = 1 << 16;
+
+    private final Disease[] diseases;
+    private int size = 0;
+
+    DiseaseRegistry(int capacity) {
+        if (capacity < 0 || capacity > MAX_CAPACITY) {
+            throw new IllegalArgumentException("A registry holds up to " + MAX_CAPACITY + " diseases, not " + capacity);
+        }
+        this.diseases = new Disease[capacity];
+    }
+
+    // Add a disease under the next free id
+    Disease register(Genome genome, double metabolicPenalty) {
+        if (size == diseases.length) {
+            throw new IllegalStateException("Registry is full at " + size + " diseases");
+        }
+        Disease d = new Disease(size, genome, metabolicPenalty);
+        diseases[size++] = d;
+        return d;
+    }
+
+    Disease get(int id) {
+        if (id >= size) {
+            throw new IllegalArgumentException("No disease " + id + " among " + size);
+        }
+        return diseases[id];
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return diseases.length;
+    }
+
+    // Longs needed for a bitset of every id the registry can hold
+    int maskWords() {
+        return (diseases.length + 63) >>> 6;
+    }
+}
@@ -0,0 +1,100 @@
+import java.nio.ByteBuffer;
+
+//======================================================================
+//* A set of disease ids kept as a bitset in an agent's AgentStore
+//* record: bit i of the set is bit (i % 64) of word i / 64.  With the
+//* usual dozen diseases the set is a single long, and every operation
+//* is a few bit operations on it.  Ids are visited in increasing order,
+//* which keeps runs reproducible.
+//======================================================================
+final class DiseaseSet {
+    private final ByteBuffer record;
+    private final int start;  // offset of word 0 in record
+    private final int words;
+
+    DiseaseSet(ByteBuffer record, int start, int words) {
+        this.record = record;
+        this.start = start;
+        this.words = words;
+    }
+
+    private long word(int w) {
+        return record.getLong(start + 8 * w);
+    }
+
+    private void setWord(int w, long bits) {
+        record.putLong(start + 8 * w, bits);
+    }
+
+    boolean isEmpty() {
+        for (int w = 0; w < words; w++) {
+            if (word(w) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int size() {
+        int n = 0;
+        for (int w = 0; w < words; w++) {
+            n += Long.bitCount(word(w));
+        }
+        return n;
+    }
+
+    boolean contains(int id) {
+        return (word(id >>> 6) & (1L << id)) != 0;
+    }
+
+    // Whether the id was not in the set before
+    boolean add(int id) {
+        long bits = word(id >>> 6);
+        setWord(id >>> 6, bits | (1L << id));
+        return (bits & (1L << id)) == 0;
+    }
+
+    // Whether the id was in the set before
+    boolean remove(int id) {
+        long bits = word(id >>> 6);
+        setWord(id >>> 6, bits & ~(1L << id));
+        return (bits & (1L << id)) != 0;
+    }
+
+    void clear() {
+        for (int w = 0; w < words; w++) {
+            setWord(w, 0);
+        }
+    }
+
+    // The smallest id in the set that is at least from, or -1 if there is none
+    int nextId(int from) {
+        int w = from >>> 6;
+        if (w >= words) {
+            return -1;
+        }
+        long bits = word(w) & (-1L << from);
+        while (bits == 0) {
+            if (++w == words) {
+                return -1;
+            }
+            bits = word(w);
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(bits);
+    }
+
+    // The id at position n, counting from 0 in increasing order; n must be below size()
+    int get(int n) {
+        for (int w = 0; ; w++) {
+            long bits = word(w);
+            int count = Long.bitCount(bits);
+            if (n < count) {
+                for (; n > 0; n--) {
+                    bits &= bits - 1;
+                }
+                return (w << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            n -= count;
+        }
+    }
+}
@@ -0,0 +1,36 @@
+//======================================================================
+//* Advances a Simulation through time.  The serial engine is the
+//* Simulation's own event loop; the partitioned engine runs bands of
+//* the landscape on several threads; the stepped engine advances all
+//* agents together in fixed ticks.
+//*
+//* The engine is picked with -Dengine=serial|partitioned|stepped and
+//* defaults to serial.  -Dthreads sets the thread count of the parallel
+//* engines, -Dwindow the window of the partitioned engine and -Dtick the
+//* tick of the stepped engine.
+//======================================================================
+interface Engine {
+    // Advance the simulation to endTime; false if it ran out of events first
+    boolean runUntil(double endTime);
+
+    static Engine forName(String name, Simulation simulation) {
+        switch (name) {
+            case "serial":
+                return simulation::runUntil;
+            case "partitioned":
+                return new PartitionedEngine(simulation,
+                        Double.parseDouble(System.getProperty("window", String.valueOf(PartitionedEngine.DEFAULT_WINDOW))),
+                        Integer.getInteger("threads", Runtime.getRuntime().availableProcessors()));
+            case "stepped":
+                return new TimeSteppedEngine(simulation,
+                        Double.parseDouble(System.getProperty("tick", String.valueOf(TimeSteppedEngine.DEFAULT_TICK))),
+                        Integer.getInteger("threads", Runtime.getRuntime().availableProcessors()));
+            default:
+                throw new IllegalArgumentException("Unknown engine: " + name);
+        }
+    }
+
+    static Engine fromSystemProperty(Simulation simulation) {
+        return forName(System.getProperty("engine", "serial"), simulation);
+    }
+}
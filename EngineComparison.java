@@ -0,0 +1,66 @@
+import java.util.Arrays;
+import java.util.List;
+
+//======================================================================
+//* Runs the same replications with every engine and prints how fast
+//* each one is and how far its outcome is from the serial engine's.
+//* Throughput is simulated agent-time units per wall-clock second.  The
+//* outcome is the mean number of healthy agents at the end.  Every
+//* engine runs the same seeds, so each replication is compared with the
+//* serial one of its seed, and the mean of those differences is printed
+//* with the half-width of its 95% confidence interval.  This is far
+//* narrower than the spread of the outcomes themselves, so a bias that
+//* a comparison of the two means would hide still shows.  Run with
+//*   java EngineComparison [gridSize numAgents replications maxTime]
+//======================================================================
+class EngineComparison {
+    private static final int MASTER_SEED = 8675309;
+
+    // engine name and window (partitioned) or tick (stepped)
+    private static final String[][] ENGINES = {
+            {"serial", null},
+            {"partitioned", String.valueOf(PartitionedEngine.DEFAULT_WINDOW)},
+            {"partitioned", "0.1"},
+            {"stepped", "0.5"},
+            {"stepped", "0.1"},
+            {"stepped", "0.02"},
+    };
+
+    public static void main(String[] args) {
+        int gridSize = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        int numAgents = args.length > 1 ? Integer.parseInt(args[1]) : 400;
+        int replications = args.length > 2 ? Integer.parseInt(args[2]) : 30;
+        double maxTime = args.length > 3 ? Double.parseDouble(args[3]) : 100;
+
+        System.out.println("engine,step,seconds,agentTime/s,healthy,ci,vsSerial,ci");
+        List<ReplicationResult> serial = null;
+        for (String[] engine : ENGINES) {
+            System.setProperty("engine", engine[0]);
+            if (engine[1] != null) {
+                System.setProperty(engine[0].equals("partitioned") ? "window" : "tick", engine[1]);
+            }
+
+            // One replication at a time, so that the engine's own threads are what is measured
+            long start = System.nanoTime();
+            List<ReplicationResult> results = new ReplicationRunner(gridSize, numAgents, maxTime, 1)
+                    .run(MASTER_SEED, replications);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            double mean = ReplicationRunner.mean(results, ReplicationResult::getNumHealthy);
+            double halfWidth = ReplicationRunner.confidenceHalfWidth(results, ReplicationResult::getNumHealthy);
+            if (serial == null) {
+                serial = results;
+            }
+            double[] differences = new double[replications];
+            for (int i = 0; i < replications; i++) {
+                differences[i] = results.get(i).getNumHealthy() - serial.get(i).getNumHealthy();
+            }
+            double difference = Arrays.stream(differences).average().orElse(Double.NaN);
+            System.out.println(engine[0] + "," + (engine[1] == null ? "" : engine[1]) + ","
+                    + String.format("%.2f", seconds) + ","
+                    + String.format("%.0f", numAgents * maxTime * replications / seconds) + ","
+                    + String.format("%.1f,%.1f,%+.1f,%.1f", mean, halfWidth, difference,
+                    ReplicationRunner.confidenceHalfWidth(differences)));
+        }
+    }
+}
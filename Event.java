@@ -1,30 +1,36 @@
-public class Event implements Comparable {
-    private final double time;
-    private final String type;
-    private final String target;
+//======================================================================
+//* A reusable handle onto one event taken from the EventCalendar.  The
+//* calendar keeps events in primitive arrays and copies the one being
+//* polled into a caller-owned Event, so the event loop allocates none.
+//======================================================================
+public class Event {
+    private double time;
+    private EventKind kind;
+    private int target;
+    private int generation;
 
-    public Event(double time, String type, String target) {
+    void set(double time, EventKind kind, int target, int generation) {
         this.time = time;
-        this.type = type;
+        this.kind = kind;
         this.target = target;
+        this.generation = generation;
     }
 
-
-    public String getType() {
-        return type;
+    public EventKind getKind() {
+        return kind;
     }
 
     public double getTime() {
         return time;
     }
 
-    @Override
-    public int compareTo(Object o) {
-        assert o instanceof Event;
-        return Double.compare(this.time, ((Event) o).time);
+    // Handle of the target agent in the AgentRegistry
+    public int getTarget() {
+        return target;
     }
 
-    public String getTarget() {
-        return target;
+    // Generation of the target agent's handle when this event was created
+    public int getGeneration() {
+        return generation;
     }
 }
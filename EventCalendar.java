@@ -0,0 +1,59 @@
+//======================================================================
+//* The global event calendar.  Events of dead agents are never searched
+//* for and removed; instead each event carries the generation of its
+//* target agent and poll() drops the ones whose agent has since died.
+//======================================================================
+class EventCalendar {
+    private final Scheduler scheduler;
+    private final AgentRegistry agents;
+    private final Event peeked = new Event();
+    private long staleSkipped = 0;
+
+    EventCalendar(AgentRegistry agents, Scheduler scheduler) {
+        this.agents = agents;
+        this.scheduler = scheduler;
+    }
+
+    void schedule(double time, EventKind kind, Agent target) {
+        scheduler.push(time, kind, target.getID(), target.getGeneration());
+    }
+
+    // Move the earliest live event into the handle; false once the calendar runs dry
+    boolean poll(Event into) {
+        while (!scheduler.isEmpty()) {
+            scheduler.pop(into);
+            if (agents.isCurrent(into.getTarget(), into.getGeneration())) {
+                return true;
+            }
+            staleSkipped++;
+        }
+        return false;
+    }
+
+    // Time of the earliest live event, or infinity if there is none
+    double peekTime() {
+        while (!scheduler.isEmpty()) {
+            scheduler.peek(peeked);
+            if (agents.isCurrent(peeked.getTarget(), peeked.getGeneration())) {
+                return peeked.getTime();
+            }
+            scheduler.pop(peeked);
+            staleSkipped++;
+        }
+        return Double.POSITIVE_INFINITY;
+    }
+
+    int size() {
+        return scheduler.size();
+    }
+
+    // Number of events dropped by poll() because their agent was already dead
+    long getStaleSkipped() {
+        return staleSkipped;
+    }
+
+    // Count events another calendar skipped, when its events are moved onto this one
+    void addStaleSkipped(long skipped) {
+        staleSkipped += skipped;
+    }
+}
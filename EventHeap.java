@@ -0,0 +1,102 @@
+import java.util.Arrays;
+
+//======================================================================
+//* Binary min-heap of events ordered by time, stored as parallel
+//* primitive arrays instead of Event objects.  Pushing and popping
+//* allocate nothing once the arrays have grown to the peak size.
+//======================================================================
+class EventHeap implements Scheduler {
+    private double[] time = new double[64];
+    private long[] seq = new long[64];  // push order, breaks ties between equal times
+    private int[] kind = new int[64];
+    private int[] agent = new int[64];
+    private int[] generation = new int[64];
+    private int size = 0;
+    private long nextSeq = 0;
+
+    @Override
+    public void push(double t, EventKind k, int target, int gen) {
+        if (size == time.length) {
+            int capacity = size * 2;
+            time = Arrays.copyOf(time, capacity);
+            seq = Arrays.copyOf(seq, capacity);
+            kind = Arrays.copyOf(kind, capacity);
+            agent = Arrays.copyOf(agent, capacity);
+            generation = Arrays.copyOf(generation, capacity);
+        }
+
+        // Sift up, moving parents down into the hole until the new event fits.
+        // Its sequence number is the largest so far, so a tie in time never moves it up.
+        int i = size++;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (time[parent] <= t) {
+                break;
+            }
+            move(parent, i);
+            i = parent;
+        }
+        time[i] = t;
+        seq[i] = nextSeq++;
+        kind[i] = k.ordinal();
+        agent[i] = target;
+        generation[i] = gen;
+    }
+
+    @Override
+    public void pop(Event into) {
+        assert size > 0;
+        into.set(time[0], EventKind.VALUES[kind[0]], agent[0], generation[0]);
+
+        int last = --size;
+        if (last == 0) {
+            return;
+        }
+
+        // Sift the last event down from the root
+        double t = time[last];
+        long s = seq[last];
+        int i = 0;
+        int half = last >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            if (child + 1 < last && before(child + 1, child)) {
+                child++;
+            }
+            if (t < time[child] || (t == time[child] && s < seq[child])) {
+                break;
+            }
+            move(child, i);
+            i = child;
+        }
+        move(last, i);
+    }
+
+    @Override
+    public void peek(Event into) {
+        assert size > 0;
+        into.set(time[0], EventKind.VALUES[kind[0]], agent[0], generation[0]);
+    }
+
+    private boolean before(int i, int j) {
+        return time[i] < time[j] || (time[i] == time[j] && seq[i] < seq[j]);
+    }
+
+    private void move(int from, int to) {
+        time[to] = time[from];
+        seq[to] = seq[from];
+        kind[to] = kind[from];
+        agent[to] = agent[from];
+        generation[to] = generation[from];
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,16 @@
+//======================================================================
+//* The kinds of event handled by Simulation.step().  The event
+//* heap stores kinds by ordinal, so VALUES maps them back without the
+//* copy that values() makes on every call.
+//======================================================================
+enum EventKind {
+    MOVE,
+    DEATH,
+    MUTATE,
+    IMMUNE_RESPONSE;
+
+    static final EventKind[] VALUES = values();
+
+    // Number of kinds that an agent schedules for itself
+    static final int AGENT_KINDS = VALUES.length;
+}
@@ -0,0 +1,122 @@
+import java.util.Arrays;
+
+//======================================================================
+//* Storage for the linked-list schedulers (CalendarQueue, LadderQueue).
+//* Each event lives in a numbered record of parallel primitive arrays,
+//* and next[] links records into lists.  Freed records are reused.
+//======================================================================
+class EventPool {
+    static final int NONE = -1;
+
+    double[] time = new double[64];
+    long[] seq = new long[64];
+    int[] kind = new int[64];
+    int[] agent = new int[64];
+    int[] generation = new int[64];
+    int[] next = new int[64];
+
+    private int freeHead = NONE;
+    private int used = 0;  // records below this index have been handed out at least once
+
+    int alloc(double t, long s, EventKind k, int target, int gen) {
+        int i;
+        if (freeHead != NONE) {
+            i = freeHead;
+            freeHead = next[i];
+        } else {
+            if (used == time.length) {
+                grow();
+            }
+            i = used++;
+        }
+        time[i] = t;
+        seq[i] = s;
+        kind[i] = k.ordinal();
+        agent[i] = target;
+        generation[i] = gen;
+        next[i] = NONE;
+        return i;
+    }
+
+    void free(int i) {
+        next[i] = freeHead;
+        freeHead = i;
+    }
+
+    void copyTo(int i, Event into) {
+        into.set(time[i], EventKind.VALUES[kind[i]], agent[i], generation[i]);
+    }
+
+    // True if record i comes strictly before record j
+    boolean before(int i, int j) {
+        return time[i] < time[j] || (time[i] == time[j] && seq[i] < seq[j]);
+    }
+
+    // Insert record i into the list starting at head, keeping it sorted; returns the new head
+    int insertSorted(int head, int i) {
+        if (head == NONE || before(i, head)) {
+            next[i] = head;
+            return i;
+        }
+        int prev = head;
+        while (next[prev] != NONE && before(next[prev], i)) {
+            prev = next[prev];
+        }
+        next[i] = next[prev];
+        next[prev] = i;
+        return head;
+    }
+
+    // Sort an unsorted list with a merge sort on the links; returns the new head
+    int sort(int head) {
+        if (head == NONE || next[head] == NONE) {
+            return head;
+        }
+
+        // Split in half by walking a slow and a fast pointer
+        int slow = head;
+        int fast = next[head];
+        while (fast != NONE && next[fast] != NONE) {
+            slow = next[slow];
+            fast = next[next[fast]];
+        }
+        int second = next[slow];
+        next[slow] = NONE;
+
+        return merge(sort(head), sort(second));
+    }
+
+    private int merge(int a, int b) {
+        int head;
+        if (before(b, a)) {
+            head = b;
+            b = next[b];
+        } else {
+            head = a;
+            a = next[a];
+        }
+        int tail = head;
+        while (a != NONE && b != NONE) {
+            if (before(b, a)) {
+                next[tail] = b;
+                b = next[b];
+            } else {
+                next[tail] = a;
+                a = next[a];
+            }
+            tail = next[tail];
+        }
+        next[tail] = (a != NONE) ? a : b;
+        return head;
+    }
+
+    private void grow() {
+        int capacity = time.length * 2;
+        time = Arrays.copyOf(time, capacity);
+        seq = Arrays.copyOf(seq, capacity);
+        kind = Arrays.copyOf(kind, capacity);
+        agent = Arrays.copyOf(agent, capacity);
+        generation = Arrays.copyOf(generation, capacity);
+        next = Arrays.copyOf(next, capacity);
+    }
+}
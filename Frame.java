@@ -0,0 +1,113 @@
+import java.util.Arrays;
+
+//======================================================================
+//* What the canvas draws: the colors of the tiles of the View it asked
+//* for, the agents standing in that view if it is a detailed one, and
+//* the census, all at one simulation time.  A frame holds only
+//* primitive arrays, so painting it never touches the engine's objects,
+//* and its size depends on the view rather than on the grid.  Frames
+//* are reused by a FrameExchanger, which makes sure that a frame is
+//* never captured into while the canvas is painting it.
+//======================================================================
+final class Frame {
+    private final int gridSize;
+    private View view;               // null until the canvas asks for one
+    private int[] colors = new int[0];   // RGB of each tile of the view, row by row
+    private int[] agentCells = new int[0];  // tile of the view each agent stands on
+    private boolean[] agentInfected = new boolean[0];
+    private int agentCount = 0;
+    private long sequence = 0;       // number of the capture, 0 before the first
+    private double time;
+    private int population;
+    private int healthy;
+    private int infected;
+
+    Frame(int gridSize) {
+        this.gridSize = gridSize;
+    }
+
+    // Copy the simulation's state in the view, with the summary already brought up to date.
+    // Only call it from the thread running the engine.
+    void capture(Simulation simulation, LandscapeSummary summary, View view, long sequence) {
+        this.sequence = sequence;
+        this.time = simulation.getTime();
+        this.view = view;
+        agentCount = 0;
+        if (view != null) {
+            int tiles = view.getRows() * view.getCols();
+            if (colors.length < tiles) {
+                colors = new int[tiles];
+            }
+            summary.getColors(view, colors);
+            if (view.isDetailed()) {
+                captureAgents(simulation.landscape, view);
+            }
+        }
+
+        Census census = simulation.getCensus();
+        this.population = census.getPopulation();
+        this.healthy = census.getHealthy();
+        this.infected = census.getInfected();
+    }
+
+    private void captureAgents(Landscape landscape, View view) {
+        for (int r = 0; r < view.getRows(); r++) {
+            int from = landscape.index(view.getRow() + r, view.getCol());
+            for (int c = 0; c < view.getCols(); c++) {
+                Agent a = landscape.getOccupant(from + c);
+                if (a != null) {
+                    if (agentCount == agentCells.length) {
+                        agentCells = Arrays.copyOf(agentCells, Math.max(16, 2 * agentCount));
+                        agentInfected = Arrays.copyOf(agentInfected, agentCells.length);
+                    }
+                    agentCells[agentCount] = r * view.getCols() + c;
+                    agentInfected[agentCount++] = a.isInfected();
+                }
+            }
+        }
+    }
+
+    int getGridSize() {
+        return gridSize;
+    }
+
+    View getView() {
+        return view;
+    }
+
+    int[] getColors() {
+        return colors;
+    }
+
+    int getAgentCount() {
+        return agentCount;
+    }
+
+    int getAgentCell(int i) {
+        return agentCells[i];
+    }
+
+    boolean isAgentInfected(int i) {
+        return agentInfected[i];
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    double getTime() {
+        return time;
+    }
+
+    int getPopulation() {
+        return population;
+    }
+
+    int getHealthy() {
+        return healthy;
+    }
+
+    int getInfected() {
+        return infected;
+    }
+}
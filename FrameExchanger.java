@@ -0,0 +1,64 @@
+import java.util.concurrent.atomic.AtomicReference;
+
+//======================================================================
+//* Hands frames from the engine thread to the canvas without either
+//* ever waiting for the other.  There are three frames: the engine
+//* captures into its back frame, the canvas paints its front frame, and
+//* the newest finished frame waits in a single atomic slot.  Publishing
+//* swaps the back frame into the slot and takes back whatever was
+//* there; the canvas, when the slot holds something newer than its
+//* front frame, swaps its front frame in and takes the newer one.  Each
+//* frame is owned by one thread at a time, so the engine never writes
+//* a frame that is being painted, and the canvas may skip frames but
+//* never sees a torn one.
+//*
+//* The canvas tells the exchanger which View it is showing, the same
+//* way round: the newest view waits in an atomic reference for the next
+//* capture.  Between frames the exchanger keeps a LandscapeSummary up
+//* to date, so that capturing a frame costs in proportion to the view
+//* and to what changed, however large the grid.
+//======================================================================
+final class FrameExchanger {
+    private final AtomicReference<Frame> slot;
+    private final AtomicReference<View> view = new AtomicReference<>();
+    private final LandscapeSummary summary;  // only touched by the engine thread, like back
+    private Frame back;
+    private View captured;                   // view of the last capture, engine thread only
+    private Frame front;  // only touched by the painting thread
+    private long published = 0;
+
+    // currentLevels chooses between coloring cells by their resource level now or by their capacity
+    FrameExchanger(Simulation simulation, boolean currentLevels) {
+        int gridSize = simulation.getGridSize();
+        this.summary = new LandscapeSummary(simulation.landscape, simulation.agents, simulation.getCensus(), currentLevels);
+        this.back = new Frame(gridSize);
+        this.slot = new AtomicReference<>(new Frame(gridSize));
+        this.front = new Frame(gridSize);
+    }
+
+    // Capture the simulation's state and make it the latest frame; engine thread only
+    void publish(Simulation simulation) {
+        summary.update(simulation.getTime());
+        captured = view.get();
+        back.capture(simulation, summary, captured, ++published);
+        back = slot.getAndSet(back);
+    }
+
+    // Whether the canvas has asked for a view since the last capture; engine thread only
+    boolean isViewChanged() {
+        return view.get() != captured;
+    }
+
+    // Ask for frames of this view from the next capture on; painting thread only
+    void show(View v) {
+        view.set(v);
+    }
+
+    // The newest published frame, or an empty one before the first; painting thread only
+    Frame latest() {
+        if (slot.get().getSequence() > front.getSequence()) {
+            front = slot.getAndSet(front);
+        }
+        return front;
+    }
+}
@@ -0,0 +1,109 @@
+import java.io.IOException;
+
+//======================================================================
+//* A string of bits, packed 64 to a long.  Used for agents' immune
+//* systems and for disease genomes.  Bit i of the genome is bit (i % 64)
+//* of word i / 64; bits past the length are always zero.
+//*
+//* Disease genomes are HeapGenomes; agents' immune genomes are
+//* StoredGenomes, views of their records in the AgentStore.  Everything
+//* here is written in terms of word() and setWord().
+//======================================================================
+abstract class Genome {
+    abstract int length();
+
+    abstract long word(int w);
+
+    abstract void setWord(int w, long bits);
+
+    // Parse a string of '0's and '1's
+    static Genome fromString(String bits) {
+        Genome g = new HeapGenome(bits.length());
+        for (int i = 0; i < bits.length(); i++) {
+            if (bits.charAt(i) == '1') {
+                g.flip(i);
+            }
+        }
+        return g;
+    }
+
+    boolean get(int i) {
+        return ((word(i >>> 6) >>> i) & 1) != 0;
+    }
+
+    void flip(int i) {
+        setWord(i >>> 6, word(i >>> 6) ^ (1L << i));
+    }
+
+    // Number of words needed to hold the genome
+    int wordCount() {
+        return (length() + 63) >>> 6;
+    }
+
+    // The 64 bits starting at bit offset, zero-filled past the end of the genome
+    long bitsAt(int offset) {
+        int w = offset >>> 6;
+        int shift = offset & 63;
+        long bits = word(w) >>> shift;
+        if (shift != 0 && w + 1 < wordCount()) {
+            bits |= word(w + 1) << (64 - shift);
+        }
+        return bits;
+    }
+
+    // Copy another genome of the same length into this one
+    void copyFrom(Genome other) {
+        if (other.length() != length()) {
+            throw new IllegalArgumentException("Genome lengths differ: " + other.length() + " and " + length());
+        }
+        for (int w = 0; w < wordCount(); w++) {
+            setWord(w, other.word(w));
+        }
+    }
+
+    void writeTo(CheckpointWriter out) throws IOException {
+        out.putInt(length());
+        for (int w = 0; w < wordCount(); w++) {
+            out.putLong(word(w));
+        }
+    }
+
+    static Genome readFrom(CheckpointReader in) throws IOException {
+        Genome g = new HeapGenome(in.getCount(Integer.MAX_VALUE - 63));
+        for (int w = 0; w < g.wordCount(); w++) {
+            g.setWord(w, in.getLong());
+        }
+        return g;
+    }
+
+    @Override
+    public String toString() {
+        char[] chars = new char[length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = get(i) ? '1' : '0';
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof Genome) || ((Genome) o).length() != length()) {
+            return false;
+        }
+        for (int w = 0; w < wordCount(); w++) {
+            if (((Genome) o).word(w) != word(w)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = 1;
+        for (int w = 0; w < wordCount(); w++) {
+            h = 31 * h + Long.hashCode(word(w));
+        }
+        return 31 * h + length();
+    }
+}
@@ -0,0 +1,101 @@
+import java.util.Random;
+
+//======================================================================
+//* Randomized check of the packed HammingDistance against the String
+//* scan it replaced.  For genome lengths on both sides of the 64-bit
+//* word boundaries it draws random immune and disease genomes, dense
+//* and sparse so that exact matches and ties are common, and requires
+//* getMinHammingDistance() to find the same minimum distance and the
+//* same first offset as a character-by-character scan, and
+//* closerByOne() to flip the same bit as the String version did.
+//* Exits with status 1 on the first mismatch.  Run with
+//*   java HammingCheck
+//======================================================================
+class HammingCheck {
+    private static final int[] LENGTHS = {1, 2, 31, 32, 33, 63, 64, 65, 100, 127, 128, 129, 191, 192, 193, 500};
+    private static final int PAIRS = 200;
+
+    public static void main(String[] args) {
+        Random rng = new Random(8675309);
+        int checked = 0;
+        for (int immuneLength : LENGTHS) {
+            for (int diseaseLength : LENGTHS) {
+                if (diseaseLength > immuneLength) {
+                    continue;
+                }
+                for (int pair = 0; pair < PAIRS; pair++) {
+                    // Sparse genomes match often; dense ones are the model's 50/50 bits
+                    double ones = pair % 2 == 0 ? 0.5 : 0.05;
+                    String immune = randomBits(rng, immuneLength, ones);
+                    String disease = randomBits(rng, diseaseLength, ones);
+                    if (!check(immune, disease)) {
+                        System.out.println("MISMATCH for immune " + immune + " and disease " + disease);
+                        System.exit(1);
+                    }
+                    checked++;
+                }
+            }
+        }
+        System.out.println("HammingDistance matches the String scan on " + checked + " pairs");
+    }
+
+    private static boolean check(String immune, String disease) {
+        int[] expected = minDistance(immune, disease);
+        int[] actual = HammingDistance.getMinHammingDistance(Genome.fromString(immune), Genome.fromString(disease));
+        if (actual[0] != expected[0] || actual[1] != expected[1]) {
+            System.out.println("getMinHammingDistance gave " + actual[0] + " at " + actual[1]
+                    + ", the String scan " + expected[0] + " at " + expected[1]);
+            return false;
+        }
+
+        Genome moved = Genome.fromString(immune);
+        int flipped = HammingDistance.closerByOne(moved, Genome.fromString(disease));
+        int expectedFlip = closerByOne(immune, disease, expected[0], expected[1]);
+        if (flipped != expectedFlip || (flipped >= 0 && moved.get(flipped) == (immune.charAt(flipped) == '1'))) {
+            System.out.println("closerByOne flipped " + flipped + ", the String version " + expectedFlip);
+            return false;
+        }
+        return true;
+    }
+
+    private static String randomBits(Random rng, int length, double ones) {
+        char[] bits = new char[length];
+        for (int i = 0; i < length; i++) {
+            bits[i] = rng.nextDouble() < ones ? '1' : '0';
+        }
+        return new String(bits);
+    }
+
+    // The String scan: every window of a, character by character
+    private static int[] minDistance(String a, String b) {
+        int minDistance = Integer.MAX_VALUE;
+        int minDistanceIndex = 0;
+        for (int i = 0; i <= a.length() - b.length(); i++) {
+            int distance = 0;
+            for (int j = 0; j < b.length(); j++) {
+                if (a.charAt(i + j) != b.charAt(j)) {
+                    distance++;
+                }
+            }
+            if (distance < minDistance) {
+                minDistance = distance;
+                minDistanceIndex = i;
+            }
+        }
+        return new int[]{minDistance, minDistanceIndex};
+    }
+
+    // The String version of closerByOne: the position it flips, or -1
+    private static int closerByOne(String a, String b, int minDistance, int offset) {
+        if (minDistance == 0) {
+            return -1;
+        }
+        int searched = (offset == 0) ? b.length() : Math.min(b.length(), b.length() - offset + 1);
+        for (int i = 0; i < searched; i++) {
+            if (a.charAt(offset + i) != b.charAt(i)) {
+                return offset + i;
+            }
+        }
+        return -1;
+    }
+}
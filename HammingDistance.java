@@ -1,42 +1,91 @@
 class HammingDistance {
-    static int[] getMinHammingDistance(String a, String b) {
-        char[] aArr = a.toCharArray();
-        char[] bArr = b.toCharArray();
-
+    // Minimum Hamming distance between b and any window of a with b's length, and the
+    // offset of the first window at that distance.  Compares 64 bits at a time.
+    static int[] getMinHammingDistance(Genome a, Genome b) {
         assert (a.length() >= b.length());
 
         int minDistance = Integer.MAX_VALUE;
-        int distance;
         int minDistanceIndex = 0;
 
-        for (int i = 0; i <= aArr.length - bArr.length; i++) {
-            distance = 0;
-            for (int j = 0; j < bArr.length; j++) {
-                if (aArr[i + j] != bArr[j]) {
-                    distance++;
+        if (b.wordCount() == 1) {
+            // b fits in one word, so each window is a single XOR
+            long bits = b.word(0);
+            long mask = tailMask(b.length());
+            for (int i = 0; i <= a.length() - b.length(); i++) {
+                int distance = Long.bitCount((a.bitsAt(i) ^ bits) & mask);
+                if (distance < minDistance) {
+                    minDistance = distance;
+                    minDistanceIndex = i;
+                    if (minDistance == 0) {
+                        break;
+                    }
                 }
             }
+            return new int[]{minDistance, minDistanceIndex};
+        }
+
+        for (int i = 0; i <= a.length() - b.length(); i++) {
+            int distance = windowDistance(a, b, i, minDistance);
             if (distance < minDistance) {
                 minDistance = distance;
                 minDistanceIndex = i;
+                if (minDistance == 0) {
+                    break;
+                }
             }
         }
 
         return new int[]{minDistance, minDistanceIndex};
     }
 
-    static String closerByOne(String a, String b) {
+    // Hamming distance between b and the window of a starting at offset.  Gives up and
+    // returns a value >= limit as soon as the distance reaches limit.
+    static int windowDistance(Genome a, Genome b, int offset, int limit) {
+        int distance = 0;
+        int lastWord = b.wordCount() - 1;
+        for (int w = 0; w <= lastWord && distance < limit; w++) {
+            long diff = a.bitsAt(offset + (w << 6)) ^ b.word(w);
+            if (w == lastWord) {
+                diff &= tailMask(b.length());
+            }
+            distance += Long.bitCount(diff);
+        }
+        return distance;
+    }
+
+    // Flip the first bit of a that differs from b within the closest window, moving
+    // a one step closer to b.  As in the original String version, only the first
+    // b.length() - offset + 1 bits of the window are looked at (all of it at offset 0).
+    // Returns the flipped position, or -1 if a was left unchanged.
+    static int closerByOne(Genome a, Genome b) {
         int[] distVal = getMinHammingDistance(a, b);
-        if (distVal[0] > 0) {
-            for (int i = distVal[1]; i <= b.length(); i++) {
-                if (a.charAt(i) != b.charAt(i - distVal[1])) {
-                    String s = a.substring(0, i);
-                    s += b.charAt(i - distVal[1]);
-                    s += a.substring(i + 1);
-                    return s;
-                }
+        return closerByOne(a, b, distVal[0], distVal[1]);
+    }
+
+    // Same, for a caller that already knows the minimum distance and its offset
+    static int closerByOne(Genome a, Genome b, int minDistance, int offset) {
+        if (minDistance == 0) {
+            return -1;
+        }
+
+        int searched = (offset == 0) ? b.length() : Math.min(b.length(), b.length() - offset + 1);
+        for (int w = 0; (w << 6) < searched; w++) {
+            long diff = a.bitsAt(offset + (w << 6)) ^ b.word(w);
+            if (searched - (w << 6) < 64) {
+                diff &= tailMask(searched);
+            }
+            if (diff != 0) {
+                int i = offset + (w << 6) + Long.numberOfTrailingZeros(diff);
+                a.flip(i);
+                return i;
             }
         }
-        return a;
+        return -1;
+    }
+
+    // Mask for the bits of the last word of a bit string of the given length
+    private static long tailMask(int length) {
+        int used = length & 63;
+        return used == 0 ? -1L : (1L << used) - 1;
     }
 }
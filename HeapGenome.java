@@ -0,0 +1,32 @@
+//======================================================================
+//* A Genome held in its own array of words.
+//======================================================================
+final class HeapGenome extends Genome {
+    private final long[] words;
+    private final int length;
+
+    HeapGenome(int length) {
+        this.length = length;
+        this.words = new long[(length + 63) >>> 6];
+    }
+
+    @Override
+    int length() {
+        return length;
+    }
+
+    @Override
+    int wordCount() {
+        return words.length;
+    }
+
+    @Override
+    long word(int w) {
+        return words[w];
+    }
+
+    @Override
+    void setWord(int w, long bits) {
+        words[w] = bits;
+    }
+}
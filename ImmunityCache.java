@@ -0,0 +1,171 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+//======================================================================
+//* Remembers, for each disease an agent has met, the closest window of
+//* the agent's immune genome to the disease genome: its Hamming
+//* distance and offset.  An entry is computed by a full scan the first
+//* time, and after that bitFlipped() patches it for each single-bit
+//* change of the immune genome by looking only at the windows that
+//* contain the flipped bit.  The entries are slots in the agent's
+//* AgentStore record, one per disease id modulo the slot count; a
+//* disease that finds its slot taken by another is scanned afresh and
+//* takes the slot over.
+//======================================================================
+class ImmunityCache {
+    private static final int EMPTY = -1;
+
+    // The slots and the counters live in the agent's record, which starts at base in record
+    private final AgentStore store;
+    private final ByteBuffer record;
+    private final int base;
+    private final int slotMask;
+
+    ImmunityCache(AgentStore store, int agent) {
+        this.store = store;
+        this.record = store.chunkOf(agent);
+        this.base = store.base(agent);
+        this.slotMask = store.getCacheSlots() - 1;
+    }
+
+    // Forget every entry, for a new agent
+    void clear() {
+        for (int slot = 0; slot <= slotMask; slot++) {
+            record.putInt(base + store.cacheDisease(slot), EMPTY);
+        }
+    }
+
+    // Minimum Hamming distance between the disease genome and any window of the immune genome
+    int distance(Genome immune, Disease d) {
+        int slot = lookup(immune, d);
+        return record.getInt(base + store.cacheDistance(slot));
+    }
+
+    // Offset of the first window at the minimum distance
+    int offset(Genome immune, Disease d) {
+        int slot = lookup(immune, d);
+        return record.getInt(base + store.cacheOffset(slot));
+    }
+
+    private int lookup(Genome immune, Disease d) {
+        int id = d.getId();
+        int slot = id & slotMask;
+        if (record.getInt(base + store.cacheDisease(slot)) != id) {
+            count(AgentStore.CACHE_MISSES);
+            record.putInt(base + store.cacheDisease(slot), id);
+            rescan(immune, slot, d.getGenome());
+        } else {
+            count(AgentStore.CACHE_HITS);
+        }
+        return slot;
+    }
+
+    private void count(int counter) {
+        record.putLong(base + counter, record.getLong(base + counter) + 1);
+    }
+
+    private void rescan(Genome immune, int slot, Genome disease) {
+        long start = Instrumentation.ENABLED ? System.nanoTime() : 0;
+        int[] distVal = HammingDistance.getMinHammingDistance(immune, disease);
+        record.putInt(base + store.cacheDistance(slot), distVal[0]);
+        record.putInt(base + store.cacheOffset(slot), distVal[1]);
+        if (Instrumentation.ENABLED) {
+            Instrumentation.HAMMING_SCAN.recordSince(start);
+        }
+    }
+
+    // Bring every entry up to date after bit `position` of the immune genome was flipped.
+    // Only windows containing the bit changed, each by exactly one, so the old best either
+    // still wins or one of those windows takes over; a full scan is needed only when the
+    // best window itself got worse.
+    void bitFlipped(Genome immune, int position) {
+        long start = Instrumentation.ENABLED ? System.nanoTime() : 0;
+        for (int slot = 0; slot <= slotMask; slot++) {
+            int id = record.getInt(base + store.cacheDisease(slot));
+            if (id == EMPTY) {
+                continue;
+            }
+            int distanceField = store.cacheDistance(slot);
+            int bestDistance = record.getInt(base + distanceField);
+            count(AgentStore.CACHE_UPDATES);
+            Genome disease = store.getDiseases().get(id).getGenome();
+            int first = Math.max(0, position - disease.length() + 1);
+            int last = Math.min(position, immune.length() - disease.length());
+
+            int best = record.getInt(base + store.cacheOffset(slot));
+            if (best >= first && best <= last) {
+                if (immune.get(position) == disease.get(position - best)) {
+                    record.putInt(base + distanceField, bestDistance - 1);
+                } else {
+                    count(AgentStore.CACHE_MISSES);
+                    rescan(immune, slot, disease);
+                }
+                continue;
+            }
+
+            int bestBefore = best;
+            for (int i = first; i <= last; i++) {
+                int limit = (i < best) ? bestDistance : bestDistance - 1;
+                int distance = HammingDistance.windowDistance(immune, disease, i, limit + 1);
+                if (distance <= limit) {
+                    bestDistance = distance;
+                    best = i;
+                }
+            }
+            if (best != bestBefore) {
+                record.putInt(base + distanceField, bestDistance);
+                record.putInt(base + store.cacheOffset(slot), best);
+            }
+        }
+        if (Instrumentation.ENABLED) {
+            Instrumentation.HAMMING_PATCH.recordSince(start);
+        }
+    }
+
+    // The entries are saved rather than recomputed on restore: after bit flips an
+    // entry's offset may be a later window than a fresh scan would pick, and the
+    // immune response depends on it
+    void writeTo(CheckpointWriter out) throws IOException {
+        out.putInt(slotMask + 1);
+        for (int slot = 0; slot <= slotMask; slot++) {
+            out.putInt(record.getInt(base + store.cacheDisease(slot)));
+            out.putInt(record.getInt(base + store.cacheDistance(slot)));
+            out.putInt(record.getInt(base + store.cacheOffset(slot)));
+        }
+        out.putLong(getHits());
+        out.putLong(getMisses());
+        out.putLong(getUpdates());
+    }
+
+    void readFrom(CheckpointReader in) throws IOException {
+        int slots = in.getInt();
+        if (slots != slotMask + 1) {
+            throw new IOException("Checkpoint has " + slots + " immunity cache slots, expected " + (slotMask + 1));
+        }
+        int diseases = store.getDiseases().size();
+        for (int slot = 0; slot < slots; slot++) {
+            int id = in.getInt();
+            if (id != EMPTY && (id < 0 || id >= diseases || (id & slotMask) != slot)) {
+                throw new IOException("Corrupt checkpoint: disease " + id + " in cache slot " + slot);
+            }
+            record.putInt(base + store.cacheDisease(slot), id);
+            record.putInt(base + store.cacheDistance(slot), in.getInt());
+            record.putInt(base + store.cacheOffset(slot), in.getInt());
+        }
+        record.putLong(base + AgentStore.CACHE_HITS, in.getLong());
+        record.putLong(base + AgentStore.CACHE_MISSES, in.getLong());
+        record.putLong(base + AgentStore.CACHE_UPDATES, in.getLong());
+    }
+
+    long getHits() {
+        return record.getLong(base + AgentStore.CACHE_HITS);
+    }
+
+    long getMisses() {
+        return record.getLong(base + AgentStore.CACHE_MISSES);
+    }
+
+    long getUpdates() {
+        return record.getLong(base + AgentStore.CACHE_UPDATES);
+    }
+}
@@ -0,0 +1,80 @@
+import java.util.Random;
+
+//======================================================================
+//* Randomized check of ImmunityCache against fresh scans.  An immune
+//* genome meets diseases of many lengths, more of them than there are
+//* cache slots so that slots are taken over, and then takes random
+//* single-bit flips, each reported to bitFlipped(), with diseases
+//* looked up in between.  After every flip each cached disease's
+//* distance must equal a fresh getMinHammingDistance(), and its cached
+//* offset must be a window at that distance (it may be a later one than
+//* a fresh scan picks).  Immune lengths on both sides of the 64-bit word
+//* boundaries are covered.  Exits with status 1 on the first mismatch.
+//* Run with
+//*   java ImmunityCacheCheck
+//======================================================================
+class ImmunityCacheCheck {
+    private static final int[] IMMUNE_LENGTHS = {50, 63, 64, 65, 128, 129, 300};
+    private static final int DISEASES = 100;  // more than the 64 cache slots
+    private static final int FLIPS = 3000;
+
+    public static void main(String[] args) {
+        Random rng = new Random(8675309);
+        long checked = 0;
+        for (int immuneLength : IMMUNE_LENGTHS) {
+            DiseaseRegistry diseases = new DiseaseRegistry(DISEASES);
+            for (int i = 0; i < DISEASES; i++) {
+                int length = 1 + rng.nextInt(Math.min(immuneLength, 80));
+                diseases.register(randomGenome(rng, length), 0);
+            }
+            AgentStore store = new AgentStore(diseases, immuneLength);
+            store.allocate(0);
+            ImmunityCache cache = new ImmunityCache(store, 0);
+            cache.clear();
+            Genome immune = randomGenome(rng, immuneLength);
+
+            for (int flip = 0; flip < FLIPS; flip++) {
+                // Look a few diseases up, which fills or takes over their slots
+                for (int k = 0; k < 3; k++) {
+                    Disease d = diseases.get(rng.nextInt(DISEASES));
+                    check(cache, immune, d, immuneLength, flip);
+                    checked++;
+                }
+                int position = rng.nextInt(immuneLength);
+                immune.flip(position);
+                cache.bitFlipped(immune, position);
+                // These have slots of their own, so they keep being patched until taken over
+                for (int id = 0; id < store.getCacheSlots(); id++) {
+                    check(cache, immune, diseases.get(id), immuneLength, flip);
+                    checked++;
+                }
+            }
+        }
+        System.out.println("ImmunityCache matches fresh scans in " + checked + " lookups");
+    }
+
+    private static void check(ImmunityCache cache, Genome immune, Disease d, int immuneLength, int flip) {
+        Genome disease = d.getGenome();
+        int[] fresh = HammingDistance.getMinHammingDistance(immune, disease);
+        int distance = cache.distance(immune, d);
+        int offset = cache.offset(immune, d);
+        int atOffset = offset < 0 || offset > immune.length() - disease.length() ? -1
+                : HammingDistance.windowDistance(immune, disease, offset, Integer.MAX_VALUE);
+        if (distance != fresh[0] || atOffset != fresh[0]) {
+            System.out.println("MISMATCH at immune length " + immuneLength + ", flip " + flip + ", disease "
+                    + d.getId() + " of length " + disease.length() + ": cached " + distance + " at " + offset
+                    + " (window distance " + atOffset + "), fresh scan " + fresh[0] + " at " + fresh[1]);
+            System.exit(1);
+        }
+    }
+
+    private static Genome randomGenome(Random rng, int length) {
+        Genome g = new HeapGenome(length);
+        for (int i = 0; i < length; i++) {
+            if (rng.nextBoolean()) {
+                g.flip(i);
+            }
+        }
+        return g;
+    }
+}
@@ -0,0 +1,102 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+//======================================================================
+//* Probes on the hot paths of the engine, switched on with
+//* -Dinstrument=true.  ENABLED is a static final constant, so when it
+//* is false the JIT removes every "if (Instrumentation.ENABLED)" block
+//* and the nanoTime() calls inside it, and the probes cost nothing.
+//*
+//* When enabled, every probe is registered as a JMX MBean named
+//* Simulation:type=Probe,name=<probe>, and a line summarising them is
+//* written to stderr every -Dinstrument.interval seconds (default 10).
+//* The probes are shared by all simulations in the JVM.
+//======================================================================
+final class Instrumentation {
+    static final boolean ENABLED = Boolean.getBoolean("instrument");
+
+    // Handler latency and dispatch count per event kind, indexed by ordinal
+    static final Probe[] HANDLERS = new Probe[EventKind.AGENT_KINDS];
+    // Taking the next live event off the calendar and looking up its agent
+    static final Probe LOOKUP = new Probe("lookup", "ns");
+    // Calendar size, sampled at every event the serial engine handles
+    static final Probe CALENDAR_SIZE = new Probe("calendarSize", "events");
+    // Choosing the cell to move to
+    static final Probe MOVE_SCAN = new Probe("moveScan", "ns");
+    // Trading diseases with the neighbours after a move
+    static final Probe CONTACTS = new Probe("contacts", "ns");
+    // Full scans of an immune genome for a disease, and patching the cache after a bit flip
+    static final Probe HAMMING_SCAN = new Probe("hammingScan", "ns");
+    static final Probe HAMMING_PATCH = new Probe("hammingPatch", "ns");
+
+    static {
+        for (EventKind kind : EventKind.VALUES) {
+            HANDLERS[kind.ordinal()] = new Probe(kind.name().toLowerCase(), "ns");
+        }
+        if (ENABLED) {
+            start();
+        }
+    }
+
+    private Instrumentation() {
+    }
+
+    static Probe[] probes() {
+        Probe[] probes = new Probe[HANDLERS.length + 6];
+        System.arraycopy(HANDLERS, 0, probes, 0, HANDLERS.length);
+        int i = HANDLERS.length;
+        probes[i++] = LOOKUP;
+        probes[i++] = CALENDAR_SIZE;
+        probes[i++] = MOVE_SCAN;
+        probes[i++] = CONTACTS;
+        probes[i++] = HAMMING_SCAN;
+        probes[i] = HAMMING_PATCH;
+        return probes;
+    }
+
+    private static void start() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (Probe p : probes()) {
+            try {
+                server.registerMBean(p, new ObjectName("Simulation:type=Probe,name=" + p.getName()));
+            } catch (JMException e) {
+                throw new IllegalStateException("Cannot register probe " + p.getName(), e);
+            }
+        }
+
+        long interval = Long.getLong("instrument.interval", 10);
+        if (interval > 0) {
+            ScheduledExecutorService logger = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "instrumentation");
+                t.setDaemon(true);
+                return t;
+            });
+            long[] lastCounts = new long[probes().length];
+            logger.scheduleAtFixedRate(() -> System.err.println(summary(lastCounts, interval)),
+                    interval, interval, TimeUnit.SECONDS);
+        }
+    }
+
+    // One line per period: for each probe its rate over the period, then p50/p99/max so far
+    private static String summary(long[] lastCounts, long seconds) {
+        StringBuilder line = new StringBuilder("instrumentation:");
+        Probe[] probes = probes();
+        for (int i = 0; i < probes.length; i++) {
+            Probe p = probes[i];
+            long count = p.getCount();
+            line.append(' ').append(p.getName())
+                    .append(" ").append((count - lastCounts[i]) / seconds).append("/s")
+                    .append(" p50=").append(p.getP50())
+                    .append(" p99=").append(p.getP99())
+                    .append(" max=").append(p.getMax()).append(p.getUnit())
+                    .append(';');
+            lastCounts[i] = count;
+        }
+        return line.toString();
+    }
+}
@@ -0,0 +1,191 @@
+import java.util.Arrays;
+
+//======================================================================
+//* Tang, Goh and Thng's ladder queue.  Far-future events pile up
+//* unsorted in Top.  When they are needed they are spread over a rung
+//* of buckets; a bucket that is still too big is spread over a finer
+//* rung below it, and a small enough bucket is sorted into Bottom,
+//* which is the only sorted list and the one events are popped from.
+//*
+//* The bucket of an event in a rung is always computed by bucketOf(),
+//* both when a rung is filled and when an event is pushed into it, so
+//* events with equal times always end up together and keep their push
+//* order when Bottom is sorted.
+//======================================================================
+class LadderQueue implements Scheduler {
+    private static final int THRESHOLD = 50;  // buckets up to this size go straight to Bottom
+    private static final int MAX_RUNGS = 8;
+
+    private final EventPool pool = new EventPool();
+    private int size = 0;
+    private long nextSeq = 0;
+
+    // Top: unsorted events at or after topStart
+    private int topHead = EventPool.NONE;
+    private int topCount = 0;
+    private double topMin;
+    private double topMax;
+    private double topStart = Double.NEGATIVE_INFINITY;
+
+    // Rungs: rung 0 is the coarsest, rung numRungs - 1 the finest
+    private int numRungs = 0;
+    private final int[][] rungHeads = new int[MAX_RUNGS][];
+    private final int[][] rungCounts = new int[MAX_RUNGS][];
+    private final int[] rungSize = new int[MAX_RUNGS];     // buckets in use
+    private final int[] rungCurrent = new int[MAX_RUNGS];  // first bucket not yet consumed
+    private final double[] rungStart = new double[MAX_RUNGS];
+    private final double[] rungWidth = new double[MAX_RUNGS];
+
+    // Bottom: sorted events earlier than anything in the rungs
+    private int bottomHead = EventPool.NONE;
+
+    @Override
+    public void push(double t, EventKind k, int target, int gen) {
+        int e = pool.alloc(t, nextSeq++, k, target, gen);
+        size++;
+
+        if (t >= topStart) {
+            pool.next[e] = topHead;
+            topHead = e;
+            if (topCount++ == 0) {
+                topMin = t;
+                topMax = t;
+            } else {
+                topMin = Math.min(topMin, t);
+                topMax = Math.max(topMax, t);
+            }
+            return;
+        }
+
+        for (int r = 0; r < numRungs; r++) {
+            int b = bucketOf(r, t);
+            if (b >= rungCurrent[r]) {
+                addToBucket(r, b, e);
+                return;
+            }
+        }
+
+        bottomHead = pool.insertSorted(bottomHead, e);
+    }
+
+    @Override
+    public void pop(Event into) {
+        assert size > 0;
+        if (bottomHead == EventPool.NONE) {
+            refillBottom();
+        }
+
+        int e = bottomHead;
+        bottomHead = pool.next[e];
+        pool.copyTo(e, into);
+        pool.free(e);
+
+        if (--size == 0) {
+            // Start over so the next events are not forced through Bottom one by one
+            topStart = Double.NEGATIVE_INFINITY;
+            numRungs = 0;
+        }
+    }
+
+    @Override
+    public void peek(Event into) {
+        assert size > 0;
+        if (bottomHead == EventPool.NONE) {
+            refillBottom();
+        }
+        pool.copyTo(bottomHead, into);
+    }
+
+    private void refillBottom() {
+        while (true) {
+            if (numRungs == 0) {
+                int list = topHead;
+                int count = topCount;
+                double min = topMin;
+                double max = topMax;
+                topHead = EventPool.NONE;
+                topCount = 0;
+                topStart = max;
+
+                if (count <= THRESHOLD || min == max) {
+                    bottomHead = pool.sort(list);
+                    return;
+                }
+                spawnRung(list, count, min, max);
+                continue;
+            }
+
+            int r = numRungs - 1;
+            int[] heads = rungHeads[r];
+            int b = rungCurrent[r];
+            while (b < rungSize[r] && heads[b] == EventPool.NONE) {
+                b++;
+            }
+            if (b == rungSize[r]) {
+                numRungs--;
+                continue;
+            }
+
+            int list = heads[b];
+            int count = rungCounts[r][b];
+            heads[b] = EventPool.NONE;
+            rungCounts[r][b] = 0;
+            rungCurrent[r] = b + 1;
+
+            double min = Double.POSITIVE_INFINITY;
+            double max = Double.NEGATIVE_INFINITY;
+            for (int e = list; e != EventPool.NONE; e = pool.next[e]) {
+                min = Math.min(min, pool.time[e]);
+                max = Math.max(max, pool.time[e]);
+            }
+
+            if (count <= THRESHOLD || numRungs == MAX_RUNGS || min == max) {
+                bottomHead = pool.sort(list);
+                return;
+            }
+            spawnRung(list, count, min, max);
+        }
+    }
+
+    // Spread an unsorted list whose times lie in [min, max] over a new finest rung
+    private void spawnRung(int list, int count, double min, double max) {
+        int r = numRungs++;
+        if (rungHeads[r] == null || rungHeads[r].length < count) {
+            rungHeads[r] = new int[count];
+            Arrays.fill(rungHeads[r], EventPool.NONE);
+            rungCounts[r] = new int[count];
+        }
+        rungSize[r] = count;
+        rungCurrent[r] = 0;
+        rungStart[r] = min;
+        rungWidth[r] = (max - min) / count;
+
+        int e = list;
+        while (e != EventPool.NONE) {
+            int next = pool.next[e];
+            addToBucket(r, bucketOf(r, pool.time[e]), e);
+            e = next;
+        }
+    }
+
+    private int bucketOf(int r, double t) {
+        double b = Math.floor((t - rungStart[r]) / rungWidth[r]);
+        return (int) Math.max(0, Math.min(rungSize[r] - 1, b));
+    }
+
+    private void addToBucket(int r, int b, int e) {
+        pool.next[e] = rungHeads[r][b];
+        rungHeads[r][b] = e;
+        rungCounts[r][b]++;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+}
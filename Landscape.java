@@ -1,24 +1,65 @@
-import java.util.ArrayList;
-import java.util.Random;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
 
+//======================================================================
+//* The grid of cells, stored as flat row-major arrays: one entry per
+//* cell in each of capacity, regrowth, lastDepleted and occupants.
+//* Cells are addressed by index = row * size + col; index() applies the
+//* toroidal wrap.  getCellAt() hands out a Cell view over one index for
+//* code that prefers objects, but the engine works on indexes.
+//*
+//* The free cells are also listed in free[0, freeCount), with each
+//* cell's position in that list in freeSlot (-1 if not listed), so that
+//* a uniformly random free cell is one draw away at any density.
+//* Occupying a cell swaps the last listed cell into its place, freeing
+//* one appends it, and a move hands the cell it leaves the list
+//* position of the cell it enters.  A move touches only its own two
+//* cells, so the parallel engines can move agents in different parts of
+//* the grid at once; the list's length only changes serially, when a
+//* dead agent's cell is freed as it is replaced (see vacate()).
+//======================================================================
 public class Landscape {
-    private final ArrayList<ArrayList<Cell>> landscape;
     private final int size;
-    private final Random rng;
 
-    public Landscape(int gridSize, Random rng) {
+    private final double[] capacity;
+    private final double[] regrowth;      // positive everywhere
+    private final double[] lastDepleted;  // -infinity if never depleted, so the level formula needs no branch
+    private final Agent[] occupants;      // agent standing on each cell, or null
+    private final int[] free;             // the unoccupied cells, in [0, freeCount)
+    private final int[] freeSlot;         // position of each cell in free, or -1 if it is not there
+    private int freeCount;
+
+    // Cells depleted or given a new occupant since the last drainChanged(), logged only once
+    // trackChanges() has been called; the parallel engines may log from several threads
+    private boolean[] changedSinceDrain;
+    private int[] changedLog;
+    private double[] depletedBeforeLog;   // lastDepleted of each logged cell before it changed
+    private final AtomicInteger changedCount = new AtomicInteger();
+
+    public Landscape(int gridSize) {
         this.size = gridSize;
-        this.rng = rng;
-        landscape = new ArrayList<>();
+
+        int cells = gridSize * gridSize;
+        capacity = new double[cells];
+        regrowth = new double[cells];
+        lastDepleted = new double[cells];
+        occupants = new Agent[cells];
+        free = new int[cells];
+        freeSlot = new int[cells];
+        for (int i = 0; i < cells; i++) {
+            free[i] = i;
+            freeSlot[i] = i;
+        }
+        freeCount = cells;
+        Arrays.fill(lastDepleted, Double.NEGATIVE_INFINITY);
         for (int i = 0; i < gridSize; i++) {
-            ArrayList<Cell> cellList = new ArrayList<>();
             for (int j = 0; j < gridSize; j++) {
-                Cell c = new Cell(1, makeResourceCapacity(i, j, gridSize, gridSize), i, j);
-                cellList.add(c);
+                int index = i * gridSize + j;
+                capacity[index] = makeResourceCapacity(i, j, gridSize, gridSize);
+                regrowth[index] = 1;
             }
-            landscape.add(cellList);
         }
-
     }
 
     private double makeResourceCapacity(int i, int j, int bigX, int bigY) {
@@ -32,30 +73,242 @@ public class Landscape {
         return psi * Math.exp(-Math.pow((x / thetaX), 2) - Math.pow((y / thetaY), 2));
     }
 
+    // Wrap around bottom/top and sides; coordinates already on the grid take no division
+    private int wrap(int i) {
+        return (i >= 0 && i < size) ? i : Math.floorMod(i, size);
+    }
+
+    public int index(int row, int col) {
+        return wrap(row) * size + wrap(col);
+    }
+
+    public int rowOf(int index) {
+        return index / size;
+    }
+
+    public int colOf(int index) {
+        return index % size;
+    }
+
     public Cell getCellAt(int row, int col) {
-        // Wrap around bottom/top and sides
-        int totalRows = this.landscape.size();
-        if (row >= totalRows) {
-            row = row % totalRows;
-        } else if (row < 0) {
-            row = (totalRows + row) % totalRows;
+        return new Cell(this, index(row, col));
+    }
+
+    public double getCapacity(int index) {
+        return capacity[index];
+    }
+
+    public double getRegrowthRate(int index) {
+        return regrowth[index];
+    }
+
+    // A time before the last depletion sees an empty cell.  Both parallel engines ask
+    // about such times: the partitioned engine within its window, and the time-stepped
+    // engine within a tick, whose phases act at the agents' own times out of order
+    public double getResourceLevel(int index, double time) {
+        return Math.min(capacity[index], Math.max(0, (time - lastDepleted[index]) * regrowth[index]));
+    }
+
+    public double getLastDepleted(int index) {
+        return lastDepleted[index];
+    }
+
+    // Time at which a cell has regrown to its capacity; -infinity if it was never depleted
+    public double getFullTime(int index) {
+        return lastDepleted[index] + capacity[index] / regrowth[index];
+    }
+
+    //======================================================================
+    //* public void getResourceLevels(int row, int col, int rows, int cols,
+    //*                               double time, double[] levels)
+    //* Resource levels at the given time of the cells in rows [row, row +
+    //* rows) and columns [col, col + cols), written row by row into levels.
+    //* The region must lie on the grid without wrapping.  The inner loop
+    //* reads three arrays sequentially and has no branches other than the
+    //* selects, so the JIT can turn it into vector code.
+    //======================================================================
+    public void getResourceLevels(int row, int col, int rows, int cols, double time, double[] levels) {
+        if (row < 0 || col < 0 || rows < 0 || cols < 0 || row + rows > size || col + cols > size) {
+            throw new IllegalArgumentException("Region is not on the grid");
+        }
+        if (levels.length < rows * cols) {
+            throw new IllegalArgumentException("Need room for " + rows * cols + " levels");
+        }
+        for (int r = 0; r < rows; r++) {
+            int from = (row + r) * size + col;
+            int to = r * cols;
+            for (int c = 0; c < cols; c++) {
+                double regrown = (time - lastDepleted[from + c]) * regrowth[from + c];
+                double cap = capacity[from + c];
+                levels[to + c] = regrown < 0 ? 0 : regrown < cap ? regrown : cap;
+            }
         }
+    }
 
-        int totalColumns = this.landscape.get(0).size();
-        if (col >= totalColumns) {
-            col = col % totalColumns;
-        } else if (col < 0) {
-            col = (totalColumns + col) % totalColumns;
+    // Resource levels of one whole row
+    public void getResourceLevels(int row, double time, double[] levels) {
+        getResourceLevels(row, 0, 1, size, time, levels);
+    }
+
+    public double removeResources(int index, double time) {
+        double eaten = getResourceLevel(index, time);
+        logChange(index);
+        lastDepleted[index] = Math.max(lastDepleted[index], time);
+        return eaten;
+    }
+
+    //======================================================================
+    //* void trackChanges()
+    //* int drainChanged(int[] cells, double[] depletedBefore)
+    //* Keep a log of the cells depleted or given a new occupant from now
+    //* on, so that a display can update just those.  drainChanged() copies
+    //* the cells logged since the last drain into cells, and into
+    //* depletedBefore the time each was last depleted as of that drain;
+    //* both must have room for every cell.  It returns how many cells
+    //* there are.  Two threads changing the same cell at once may log it
+    //* twice, and the first entry is the right one; if that ever overfills
+    //* the log, the drain returns -1 and the caller must look at every
+    //* cell.  Only drain while no engine is running.
+    //======================================================================
+    void trackChanges() {
+        if (changedLog == null) {
+            changedSinceDrain = new boolean[capacity.length];
+            changedLog = new int[capacity.length];
+            depletedBeforeLog = new double[capacity.length];
         }
+    }
 
-        return this.landscape.get(row).get(col);
+    int drainChanged(int[] cells, double[] depletedBefore) {
+        int n = changedCount.getAndSet(0);
+        if (n > changedLog.length) {
+            Arrays.fill(changedSinceDrain, false);
+            return -1;
+        }
+        for (int i = 0; i < n; i++) {
+            cells[i] = changedLog[i];
+            depletedBefore[i] = depletedBeforeLog[i];
+            changedSinceDrain[changedLog[i]] = false;
+        }
+        return n;
     }
 
-    public int getGridSize() {
-        return size;
+    private void logChange(int index) {
+        if (changedLog != null && !changedSinceDrain[index]) {
+            changedSinceDrain[index] = true;
+            int n = changedCount.getAndIncrement();
+            if (n < changedLog.length) {
+                changedLog[n] = index;
+                depletedBeforeLog[n] = lastDepleted[index];
+            }
+        }
+    }
+
+    // Only the depletion times and the free cells change during a run; capacity and
+    // regrowth follow from the grid size, and occupants are put back by whoever restores
+    // the agents.  The free list is kept in order, since placements draw from it.
+    void writeTo(CheckpointWriter out) throws IOException {
+        out.putDoubles(lastDepleted, 0, lastDepleted.length);
+        out.putInt(freeCount);
+        out.putInts(free, 0, freeCount);
+    }
+
+    void readFrom(CheckpointReader in) throws IOException {
+        in.getDoubles(lastDepleted, 0, lastDepleted.length);
+        freeCount = in.getCount(free.length);
+        in.getInts(free, 0, freeCount);
+        Arrays.fill(freeSlot, -1);
+        for (int i = 0; i < freeCount; i++) {
+            freeSlot[free[i]] = i;
+        }
     }
 
-    public Random getRng() {
-        return rng;
+    // Whether an agent stands on the cell, or stood there and died and the cell has not
+    // been freed yet
+    public boolean isOccupied(int index) {
+        return freeSlot[index] < 0;
+    }
+
+    public Agent getOccupant(int index) {
+        return occupants[index];
+    }
+
+    public void setOccupant(int index, Agent occupant) {
+        logChange(index);
+        occupants[index] = occupant;
+        int slot = freeSlot[index];
+        if (occupant != null && slot >= 0) {
+            int last = free[--freeCount];
+            free[slot] = last;
+            freeSlot[last] = slot;
+            freeSlot[index] = -1;
+        } else if (occupant == null && slot < 0) {
+            free[freeCount] = index;
+            freeSlot[index] = freeCount++;
+        }
+    }
+
+    // Move the occupant of one cell onto a free one
+    public void moveOccupant(int from, int to) {
+        int slot = freeSlot[to];
+        if (slot < 0 || freeSlot[from] >= 0) {
+            throw new IllegalStateException("Cannot move from cell " + from + " to occupied cell " + to);
+        }
+        logChange(from);
+        logChange(to);
+        occupants[to] = occupants[from];
+        occupants[from] = null;
+        free[slot] = from;
+        freeSlot[from] = slot;
+        freeSlot[to] = -1;
+    }
+
+    //======================================================================
+    //* void vacate(int index)
+    //* Take a dead agent off its cell.  The cell stays occupied, so no
+    //* one moves onto it, and off the free list until setOccupant(index,
+    //* null) frees it; the engines do that serially when they replace
+    //* the agent, which keeps the free list the same from run to run.
+    //======================================================================
+    void vacate(int index) {
+        logChange(index);
+        occupants[index] = null;
+    }
+
+    public int getFreeCount() {
+        return freeCount;
+    }
+
+    // A free cell chosen uniformly at random, in one draw
+    int getRandomFreeCell(RandomStream rng) {
+        if (freeCount == 0) {
+            throw new IllegalStateException("No free cell left on the landscape");
+        }
+        return free[rng.nextInt(freeCount)];
+    }
+
+    // Check that every agent is the occupant of the cell it stands on and that
+    // no other cell is occupied.  Too slow for the event loop, meant for asserts.
+    public boolean isOccupancyConsistent(Iterable<Agent> agents) {
+        int numAgents = 0;
+        for (Agent a : agents) {
+            if (occupants[index(a.getRow(), a.getCol())] != a) {
+                return false;
+            }
+            numAgents++;
+        }
+
+        int numOccupied = 0;
+        for (int i = 0; i < occupants.length; i++) {
+            if (occupants[i] != null) {
+                numOccupied++;
+            } else if (freeSlot[i] < 0 || free[freeSlot[i]] != i) {
+                return false;
+            }
+        }
+        return numOccupied == numAgents && freeCount == occupants.length - numAgents;
+    }
+
+    public int getGridSize() {
+        return size;
     }
 }
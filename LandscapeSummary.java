@@ -0,0 +1,379 @@
+import java.util.Arrays;
+
+//======================================================================
+//* A pyramid of summaries of a landscape, for showing it zoomed out.
+//* Level 0 is the cells themselves; a tile of level k + 1 covers the
+//* 2x2 tiles of level k below it, up to a top level of a single tile.
+//* For every tile from level 1 up it keeps the numbers of agents and of
+//* infected agents on its cells, and its resources as a formula in time:
+//* the capacity of its full cells, plus for the cells still regrowing
+//* the sums of r and of r * (time last depleted), so that at time t they
+//* hold t * sum(r) - sum(r * lastDepleted).  A tile of any size is then
+//* colored at any time without visiting its cells.  The sums are whole
+//* numbers: levels and rates in 1/QUANTUM of the largest capacity and
+//* times in 1/TICKS, so adding a cell and later taking it off again
+//* leaves them exactly as they were, however long the run.  The r *
+//* lastDepleted sums grow with time and may overflow, but long
+//* arithmetic wraps exactly, and the difference that gives the level is
+//* small.
+//*
+//* update() brings the pyramid to a new time by looking only at what
+//* changed: the cells the landscape logged as depleted or given a new
+//* occupant, the agents the census logged as changing health, and the
+//* regrowing cells that have become full, which come off a heap ordered
+//* by the time they fill.  Each is added to or taken off the tiles above
+//* its cell, so an update costs as much as the changes since the last
+//* one, not the size of the grid.  Used on the engine thread only.
+//======================================================================
+final class LandscapeSummary {
+    private static final int QUANTUM = 1 << 16;  // resource quanta in the largest capacity
+    private static final int TICKS = 1 << 10;    // ticks in a unit of time
+    private static final byte EMPTY = 0;
+    private static final byte HEALTHY = 1;
+    private static final byte SICK = 2;
+
+    private final Landscape landscape;
+    private final AgentRegistry agents;
+    private final Census census;
+    private final boolean currentLevels;  // false to show capacities, which never change
+    private final int gridSize;
+    private final double maxCapacity;
+    private final int levels;             // including level 0
+    private final int[] across;           // tiles along a side, by level
+    private double time;                  // of the last update
+
+    // By level from 1, indexed by tile; the level 0 arrays are null
+    private final long[][] full;          // capacity of the tile's full cells, in quanta
+    private final long[][] slope;         // sum of r over its regrowing cells, in quanta per unit time
+    private final long[][] intercept;     // sum of r * lastDepleted over them, in quanta times ticks
+    private final int[][] occupied;
+    private final int[][] infected;
+
+    private final byte[] counted;         // each cell's occupant as last counted in the tiles above it
+    private final int[] changed;          // scratch for the landscape's change log
+    private final double[] depletedBefore;
+    private final boolean[] looked;       // cells already looked at in this update
+    private int[] healthChanged;          // scratch for the census's health log
+
+    // Min-heap of regrowing cells by the time they fill; an entry is stale once its cell
+    // has been depleted again, which shows as a different full time
+    private double[] heapTimes = new double[16];
+    private int[] heapCells = new int[16];
+    private int heapSize = 0;
+    private boolean first = true;
+
+    LandscapeSummary(Landscape landscape, AgentRegistry agents, Census census, boolean currentLevels) {
+        this.landscape = landscape;
+        this.agents = agents;
+        this.census = census;
+        this.currentLevels = currentLevels;
+        this.gridSize = landscape.getGridSize();
+        int cells = gridSize * gridSize;
+        double max = 0;
+        for (int cell = 0; cell < cells; cell++) {
+            max = Math.max(max, landscape.getCapacity(cell));
+        }
+        this.maxCapacity = max;
+        this.levels = levels(gridSize);
+
+        across = new int[levels];
+        full = new long[levels][];
+        slope = new long[levels][];
+        intercept = new long[levels][];
+        occupied = new int[levels][];
+        infected = new int[levels][];
+        for (int level = 0; level < levels; level++) {
+            across[level] = tilesAcross(gridSize, level);
+            if (level > 0) {
+                int tiles = across[level] * across[level];
+                full[level] = new long[tiles];
+                slope[level] = new long[tiles];
+                intercept[level] = new long[tiles];
+                occupied[level] = new int[tiles];
+                infected[level] = new int[tiles];
+            }
+        }
+        this.counted = new byte[cells];
+        this.changed = new int[cells];
+        this.depletedBefore = new double[cells];
+        this.looked = new boolean[cells];
+        this.healthChanged = new int[0];
+        landscape.trackChanges();
+    }
+
+    // Tiles along a side of the given level of a grid's pyramid
+    static int tilesAcross(int gridSize, int level) {
+        return ((gridSize - 1) >> level) + 1;
+    }
+
+    // Levels in a grid's pyramid, from the cells up to a single tile
+    static int levels(int gridSize) {
+        int levels = 1;
+        while (tilesAcross(gridSize, levels - 1) > 1) {
+            levels++;
+        }
+        return levels;
+    }
+
+    int getLevels() {
+        return levels;
+    }
+
+    //======================================================================
+    //* void update(double time)
+    //* Bring every tile up to the landscape and agents at this time.
+    //======================================================================
+    void update(double time) {
+        // room in the health log for every agent to change twice between frames
+        int logSize = Math.max(1 << 12, 2 * agents.size());
+        if (healthChanged.length < logSize) {
+            census.trackHealthChanges(logSize);
+            healthChanged = new int[logSize];
+        }
+        double previous = this.time;
+        this.time = time;
+        int n = landscape.drainChanged(changed, depletedBefore);
+        int h = census.drainHealthChanges(healthChanged);
+        if (first || n < 0) {
+            rebuild();
+            first = false;
+            return;
+        }
+
+        // Take the old resources of cells depleted since the last update off their tiles, as
+        // they stood then; their heap entries have gone stale
+        for (int i = 0; i < n; i++) {
+            int cell = changed[i];
+            if (looked[cell]) {
+                changed[i] = -1;   // logged twice; the first entry has the old time
+                continue;
+            }
+            looked[cell] = true;
+            if (currentLevels && depletedBefore[i] != landscape.getLastDepleted(cell)) {
+                addResources(cell, depletedBefore[i], previous, -1);
+            }
+        }
+        while (heapSize > 0 && heapTimes[0] <= time) {
+            int cell = heapCells[0];
+            double fullTime = heapTimes[0];
+            popHeap();
+            if (landscape.getFullTime(cell) == fullTime) {
+                long r = quanta(landscape.getRegrowthRate(cell));
+                add(cell, quanta(landscape.getCapacity(cell)), -r, -r * ticks(landscape.getLastDepleted(cell)));
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            int cell = changed[i];
+            if (cell < 0) {
+                continue;
+            }
+            if (currentLevels && depletedBefore[i] != landscape.getLastDepleted(cell)) {
+                addResources(cell, landscape.getLastDepleted(cell), time, 1);
+            }
+            recount(cell);
+            looked[cell] = false;
+        }
+
+        if (h < 0) {
+            for (Agent a : agents) {
+                recount(landscape.index(a.getRow(), a.getCol()));
+            }
+        } else {
+            for (int i = 0; i < h; i++) {
+                Agent a = agents.get(healthChanged[i]);
+                if (a != null) {
+                    recount(landscape.index(a.getRow(), a.getCol()));
+                }
+            }
+        }
+    }
+
+    // Start over from every cell: level 1 from the cells, then each level from the one below
+    private void rebuild() {
+        heapSize = 0;
+        for (int k = 1; k < levels; k++) {
+            Arrays.fill(full[k], 0);
+            Arrays.fill(slope[k], 0);
+            Arrays.fill(intercept[k], 0);
+            Arrays.fill(occupied[k], 0);
+            Arrays.fill(infected[k], 0);
+        }
+        for (int cell = 0; cell < counted.length; cell++) {
+            int tile = levels > 1 ? tileOf(cell, 1) : -1;
+            double fullTime = landscape.getFullTime(cell);
+            if (!currentLevels || fullTime <= time) {
+                if (tile >= 0) {
+                    full[1][tile] += quanta(landscape.getCapacity(cell));
+                }
+            } else {
+                long r = quanta(landscape.getRegrowthRate(cell));
+                if (tile >= 0) {
+                    slope[1][tile] += r;
+                    intercept[1][tile] += r * ticks(landscape.getLastDepleted(cell));
+                }
+                pushHeap(fullTime, cell);
+            }
+            counted[cell] = occupantOf(cell);
+            if (tile >= 0 && counted[cell] != EMPTY) {
+                occupied[1][tile]++;
+                if (counted[cell] == SICK) {
+                    infected[1][tile]++;
+                }
+            }
+        }
+        for (int k = 2; k < levels; k++) {
+            for (int row = 0; row < across[k - 1]; row++) {
+                for (int col = 0; col < across[k - 1]; col++) {
+                    int below = row * across[k - 1] + col;
+                    int tile = (row >> 1) * across[k] + (col >> 1);
+                    full[k][tile] += full[k - 1][below];
+                    slope[k][tile] += slope[k - 1][below];
+                    intercept[k][tile] += intercept[k - 1][below];
+                    occupied[k][tile] += occupied[k - 1][below];
+                    infected[k][tile] += infected[k - 1][below];
+                }
+            }
+        }
+    }
+
+    // Add (sign 1) or take off (sign -1) a cell's resources as they stand at a time,
+    // given when it was last depleted; added cells still regrowing go on the heap
+    private void addResources(int cell, double lastDepleted, double at, int sign) {
+        double capacity = landscape.getCapacity(cell);
+        double r = landscape.getRegrowthRate(cell);
+        double fullTime = lastDepleted + capacity / r;
+        if (fullTime <= at) {
+            add(cell, sign * quanta(capacity), 0, 0);
+        } else {
+            long quantaPerTime = sign * quanta(r);
+            add(cell, 0, quantaPerTime, quantaPerTime * ticks(lastDepleted));
+            if (sign > 0) {
+                pushHeap(fullTime, cell);
+            }
+        }
+    }
+
+    private void add(int cell, long fullChange, long slopeChange, long interceptChange) {
+        for (int k = 1; k < levels; k++) {
+            int tile = tileOf(cell, k);
+            full[k][tile] += fullChange;
+            slope[k][tile] += slopeChange;
+            intercept[k][tile] += interceptChange;
+        }
+    }
+
+    // An amount of resource, or of resource per unit time, in quanta
+    private long quanta(double amount) {
+        return maxCapacity > 0 ? Math.round(amount / maxCapacity * QUANTUM) : 0;
+    }
+
+    private static long ticks(double time) {
+        return Math.round(time * TICKS);
+    }
+
+    // Move a cell's count in the tiles above it to the agent now on it, if that is a change
+    private void recount(int cell) {
+        byte now = occupantOf(cell);
+        byte was = counted[cell];
+        if (now == was) {
+            return;
+        }
+        int occupiedChange = (now != EMPTY ? 1 : 0) - (was != EMPTY ? 1 : 0);
+        int infectedChange = (now == SICK ? 1 : 0) - (was == SICK ? 1 : 0);
+        for (int k = 1; k < levels; k++) {
+            int tile = tileOf(cell, k);
+            occupied[k][tile] += occupiedChange;
+            infected[k][tile] += infectedChange;
+        }
+        counted[cell] = now;
+    }
+
+    private byte occupantOf(int cell) {
+        Agent a = landscape.getOccupant(cell);
+        return a == null ? EMPTY : a.isInfected() ? SICK : HEALTHY;
+    }
+
+    private int tileOf(int cell, int level) {
+        return (cell / gridSize >> level) * across[level] + (cell % gridSize >> level);
+    }
+
+    private void pushHeap(double fullTime, int cell) {
+        if (heapSize == heapTimes.length) {
+            heapTimes = Arrays.copyOf(heapTimes, 2 * heapSize);
+            heapCells = Arrays.copyOf(heapCells, 2 * heapSize);
+        }
+        int i = heapSize++;
+        while (i > 0 && heapTimes[(i - 1) / 2] > fullTime) {
+            heapTimes[i] = heapTimes[(i - 1) / 2];
+            heapCells[i] = heapCells[(i - 1) / 2];
+            i = (i - 1) / 2;
+        }
+        heapTimes[i] = fullTime;
+        heapCells[i] = cell;
+    }
+
+    private void popHeap() {
+        double lastTime = heapTimes[--heapSize];
+        int lastCell = heapCells[heapSize];
+        int i = 0;
+        while (2 * i + 1 < heapSize) {
+            int child = 2 * i + 1;
+            if (child + 1 < heapSize && heapTimes[child + 1] < heapTimes[child]) {
+                child++;
+            }
+            if (heapTimes[child] >= lastTime) {
+                break;
+            }
+            heapTimes[i] = heapTimes[child];
+            heapCells[i] = heapCells[child];
+            i = child;
+        }
+        heapTimes[i] = lastTime;
+        heapCells[i] = lastCell;
+    }
+
+    // The resources on a tile of level 1 or up at the time of the last update
+    double getResources(int level, int tile) {
+        // exact even when the two terms have wrapped around
+        long regrown = slope[level][tile] * ticks(time) - intercept[level][tile];
+        return (full[level][tile] + (double) regrown / TICKS) * maxCapacity / QUANTUM;
+    }
+
+    //======================================================================
+    //* void getColors(View view, int[] into)
+    //* The RGB colors of the view's tiles, row by row.  Green is the mean
+    //* resource level relative to the largest capacity; on summary views
+    //* red and blue are the fractions of cells holding infected and
+    //* healthy agents.  Detailed views leave the agents to be drawn on
+    //* top, so their cells are green only.
+    //======================================================================
+    void getColors(View view, int[] into) {
+        int level = view.getLevel();
+        int i = 0;
+        for (int row = view.getRow(); row < view.getRow() + view.getRows(); row++) {
+            int height = Math.min(1 << level, gridSize - (row << level));
+            for (int col = view.getCol(); col < view.getCol() + view.getCols(); col++) {
+                int tile = row * across[level] + col;
+                int cells = height * Math.min(1 << level, gridSize - (col << level));
+                int green;
+                int agentCount;
+                int infectedCount;
+                if (level == 0) {
+                    double resources = currentLevels ? landscape.getResourceLevel(tile, time) : landscape.getCapacity(tile);
+                    green = (int) (255 * resources / maxCapacity);
+                    Agent a = view.isDetailed() ? null : landscape.getOccupant(tile);
+                    agentCount = a == null ? 0 : 1;
+                    infectedCount = a != null && a.isInfected() ? 1 : 0;
+                } else {
+                    // rounded rates and times can take a regrowing cell a little past its capacity
+                    green = Math.min(255, (int) (255 * getResources(level, tile) / cells / maxCapacity));
+                    agentCount = occupied[level][tile];
+                    infectedCount = infected[level][tile];
+                }
+                into[i++] = ((int) (255L * infectedCount / cells)) << 16
+                        | green << 8
+                        | (int) (255L * (agentCount - infectedCount) / cells);
+            }
+        }
+    }
+}
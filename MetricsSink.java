@@ -0,0 +1,158 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+//======================================================================
+//* Writes MetricsSnapshots as CSV lines, one per snapshot:
+//*   time, population, healthy, infected, the prevalence of each disease,
+//*   mean wealth, immune diversity, and the rate of each kind of event
+//*   since the previous snapshot.
+//* Formatting and writing happen on a background thread that fills a
+//* direct buffer and writes it to a file channel when it is full, so
+//* submit() only queues the snapshot.  It blocks only if the writer
+//* falls QUEUE_CAPACITY snapshots behind, and never once the writer has
+//* failed: from then on submit() and close() throw the write's error.
+//======================================================================
+final class MetricsSink implements AutoCloseable {
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final MetricsSnapshot END = new MetricsSnapshot(0, 0, 0, new int[0], 0, 0, new long[0]);
+
+    private final BlockingQueue<MetricsSnapshot> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+    private final StringBuilder line = new StringBuilder();
+    private final Thread writer;
+    private volatile IOException failure;
+    private MetricsSnapshot previous;
+
+    MetricsSink(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        writer = new Thread(this::drain, "metrics-" + file.getFileName());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    void submit(MetricsSnapshot snapshot) throws IOException {
+        try {
+            // A failed writer takes nothing more off the queue, so look at it while waiting
+            do {
+                checkWriter();
+            } while (!queue.offer(snapshot, 100, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // A fresh exception each time, since try-with-resources adds close()'s to submit()'s
+    private void checkWriter() throws IOException {
+        if (failure != null) {
+            throw new IOException("Metrics writer failed", failure);
+        }
+        if (!writer.isAlive()) {
+            throw new IllegalStateException("Metrics writer has stopped");
+        }
+    }
+
+    // Write everything submitted so far and close the file
+    @Override
+    public void close() throws IOException {
+        try {
+            if (failure == null) {
+                submit(END);
+            }
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            channel.close();
+        }
+        if (failure != null) {
+            throw new IOException("Metrics writer failed", failure);
+        }
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                MetricsSnapshot s = queue.take();
+                if (s == END) {
+                    break;
+                }
+                if (previous == null) {
+                    writeHeader(s);
+                }
+                writeLine(s);
+                previous = s;
+            }
+            flush();
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeHeader(MetricsSnapshot s) throws IOException {
+        line.setLength(0);
+        line.append("time,population,healthy,infected");
+        for (int d = 0; d < s.getDiseaseCount(); d++) {
+            line.append(",prevalence").append(d);
+        }
+        line.append(",meanWealth,immuneDiversity");
+        for (EventKind kind : EventKind.VALUES) {
+            line.append(',').append(kind.name().toLowerCase()).append("Rate");
+        }
+        put(line.append('\n'));
+    }
+
+    private void writeLine(MetricsSnapshot s) throws IOException {
+        line.setLength(0);
+        line.append(s.getTime()).append(',').append(s.getPopulation()).append(',')
+                .append(s.getPopulation() - s.getInfected()).append(',').append(s.getInfected());
+        for (int d = 0; d < s.getDiseaseCount(); d++) {
+            line.append(',').append(s.getPopulation() == 0 ? 0 : (double) s.getInfectedBy(d) / s.getPopulation());
+        }
+        line.append(',').append(s.getMeanWealth()).append(',').append(s.getImmuneDiversity());
+
+        // Rates over the interval since the previous snapshot; the first covers the run so far
+        double since = previous == null ? 0 : previous.getTime();
+        for (EventKind kind : EventKind.VALUES) {
+            long before = previous == null ? 0 : previous.getEvents(kind);
+            double interval = s.getTime() - since;
+            line.append(',').append(interval > 0 ? (s.getEvents(kind) - before) / interval : 0);
+        }
+        put(line.append('\n'));
+    }
+
+    // The lines are ASCII, so each char is one byte.  A line longer than the buffer, as
+    // with thousands of diseases, goes out in buffer-sized pieces.
+    private void put(CharSequence text) throws IOException {
+        if (buffer.remaining() < text.length()) {
+            flush();
+        }
+        int i = 0;
+        while (i < text.length()) {
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+            int end = i + Math.min(buffer.remaining(), text.length() - i);
+            for (; i < end; i++) {
+                buffer.put((byte) text.charAt(i));
+            }
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
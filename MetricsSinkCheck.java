@@ -0,0 +1,73 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+//======================================================================
+//* Check that a MetricsSink whose writes fail never stalls the caller.
+//* The sink is pointed at /dev/full, where every write fails, and is
+//* given far more snapshots than its queue holds, each large enough to
+//* fill the write buffer; submit() must then throw rather than block,
+//* and close() must return and throw too.  A watchdog fails the check
+//* if either hangs.  Needs /dev/full, so it only runs on Linux.  Exits
+//* with status 1 on failure.  Run with
+//*   java MetricsSinkCheck
+//======================================================================
+class MetricsSinkCheck {
+    private static final Path FULL = Paths.get("/dev/full");
+    private static final int SNAPSHOTS = 10000;
+    private static final long TIMEOUT_MILLIS = 30000;
+
+    public static void main(String[] args) throws InterruptedException {
+        if (!Files.isWritable(FULL)) {
+            System.out.println("No writable " + FULL + "; skipped");
+            return;
+        }
+        Thread watchdog = new Thread(() -> {
+            try {
+                Thread.sleep(TIMEOUT_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            System.out.println("FAILED: the sink blocked for " + TIMEOUT_MILLIS + " ms");
+            System.exit(1);
+        });
+        watchdog.setDaemon(true);
+        watchdog.start();
+
+        // Enough diseases that every line is over 64 KB, so each one flushes
+        MetricsSnapshot snapshot = new MetricsSnapshot(1, 100, 10, new int[20000], 1.5, 0.25,
+                new long[EventKind.VALUES.length]);
+        MetricsSink sink;
+        try {
+            sink = new MetricsSink(FULL);
+        } catch (IOException e) {
+            System.out.println("Cannot open " + FULL + "; skipped");
+            return;
+        }
+
+        int submitted = 0;
+        boolean submitFailed = false;
+        try {
+            for (; submitted < SNAPSHOTS; submitted++) {
+                sink.submit(snapshot);
+            }
+        } catch (IOException e) {
+            submitFailed = true;
+        }
+        boolean closeFailed = false;
+        try {
+            sink.close();
+        } catch (IOException e) {
+            closeFailed = true;
+        }
+        watchdog.interrupt();
+
+        if (!submitFailed || !closeFailed) {
+            System.out.println("FAILED: submit " + (submitFailed ? "threw" : "never threw") + ", close "
+                    + (closeFailed ? "threw" : "did not throw"));
+            System.exit(1);
+        }
+        System.out.println("Failed writes reported after " + submitted + " snapshots; submit and close returned");
+    }
+}
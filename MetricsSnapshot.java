@@ -0,0 +1,115 @@
+import java.util.Arrays;
+
+//======================================================================
+//* The state of a simulation at one moment, as written by MetricsSink.
+//* Population counts come straight from the Census.  Mean wealth and
+//* immune diversity need one pass over the agents, but no stepping:
+//* wealth is read from each agent's closed-form trajectory.
+//======================================================================
+final class MetricsSnapshot {
+    private final double time;
+    private final int population;
+    private final int infected;
+    private final int[] infectedBy;  // per disease id
+    private final double meanWealth;
+    private final double immuneDiversity;
+    private final long[] events;     // handled so far, per event kind
+
+    MetricsSnapshot(double time, int population, int infected, int[] infectedBy, double meanWealth,
+                    double immuneDiversity, long[] events) {
+        this.time = time;
+        this.population = population;
+        this.infected = infected;
+        this.infectedBy = infectedBy;
+        this.meanWealth = meanWealth;
+        this.immuneDiversity = immuneDiversity;
+        this.events = events;
+    }
+
+    // The simulation must have handled every event before time, and none after
+    static MetricsSnapshot of(Simulation simulation, double time) {
+        Census census = simulation.getCensus();
+        int[] infectedBy = new int[census.getDiseaseCount()];
+        for (int d = 0; d < infectedBy.length; d++) {
+            infectedBy[d] = census.getInfectedBy(d);
+        }
+        long[] events = new long[EventKind.AGENT_KINDS];
+        for (int k = 0; k < events.length; k++) {
+            events[k] = census.getEvents(EventKind.VALUES[k]);
+        }
+
+        double meanWealth = simulation.agents.stream()
+                .mapToDouble(a -> a.wealthAt(simulation.landscape, time))
+                .average().orElse(0);
+        return new MetricsSnapshot(time, census.getPopulation(), census.getInfected(), infectedBy, meanWealth,
+                immuneDiversity(simulation.agents), events);
+    }
+
+    // Mean Hamming distance between the immune genomes of two distinct agents, from the
+    // number of agents with each bit set: a bit set in k of n genomes differs in
+    // k * (n - k) of the n * (n - 1) / 2 pairs
+    private static double immuneDiversity(AgentRegistry agents) {
+        int[] ones = new int[0];
+        int[] longer = new int[0];  // agents whose genome has each bit at all
+        int n = 0;
+        for (Agent a : agents) {
+            Genome g = a.getImmuneSystem();
+            if (ones.length < g.length()) {
+                ones = Arrays.copyOf(ones, g.length());
+                longer = Arrays.copyOf(longer, g.length());
+            }
+            for (int w = 0; w < g.wordCount(); w++) {
+                for (long bits = g.word(w); bits != 0; bits &= bits - 1) {
+                    ones[w * 64 + Long.numberOfTrailingZeros(bits)]++;
+                }
+            }
+            if (g.length() > 0) {
+                longer[g.length() - 1]++;
+            }
+            n++;
+        }
+        if (n < 2) {
+            return 0;
+        }
+
+        double differing = 0;
+        int present = 0;
+        for (int b = ones.length - 1; b >= 0; b--) {
+            present += longer[b];
+            differing += (double) ones[b] * (present - ones[b]);
+        }
+        return differing / ((double) n * (n - 1) / 2);
+    }
+
+    double getTime() {
+        return time;
+    }
+
+    int getPopulation() {
+        return population;
+    }
+
+    int getInfected() {
+        return infected;
+    }
+
+    int getDiseaseCount() {
+        return infectedBy.length;
+    }
+
+    int getInfectedBy(int disease) {
+        return infectedBy[disease];
+    }
+
+    double getMeanWealth() {
+        return meanWealth;
+    }
+
+    double getImmuneDiversity() {
+        return immuneDiversity;
+    }
+
+    long getEvents(EventKind kind) {
+        return events[kind.ordinal()];
+    }
+}
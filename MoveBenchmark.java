@@ -0,0 +1,196 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Random;
+
+//======================================================================
+//* Benchmark and self-check for Agent.move().  For each vision from 1
+//* to 20, agents are scattered over a partly depleted landscape and
+//* moved repeatedly; the time and heap allocation per move are printed.
+//*
+//* Every move is also checked against the rule it must follow: the
+//* agent lands on an unoccupied cell in its line of sight with the most
+//* resources, and no equally rich cell is closer; it stays put only if
+//* every cell in sight is occupied.  Ties are checked for uniformity on
+//* a landscape where every cell in sight is equally rich.  Run with
+//*   java MoveBenchmark [gridSize]
+//======================================================================
+class MoveBenchmark {
+    private static final int MAX_VISION = 20;
+    private static final int MOVES = 200000;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) {
+        int gridSize = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        checkTiesAreUniform();
+
+        System.out.println("vision,ns/move,bytes/move,violations");
+        for (int vision = 1; vision <= MAX_VISION; vision++) {
+            long best = Long.MAX_VALUE;
+            long bytes = 0;
+            int violations = 0;
+            // The first rounds only warm up the JIT; keep the fastest
+            for (int round = 0; round < ROUNDS; round++) {
+                long allocatedBefore = allocatedBytes();
+                long start = System.nanoTime();
+                violations = run(gridSize, vision, round == 0);
+                best = Math.min(best, System.nanoTime() - start);
+                bytes = allocatedBytes() - allocatedBefore;
+            }
+            System.out.println(vision + "," + String.format("%.1f", (double) best / MOVES) + ","
+                    + String.format("%.1f", (double) bytes / MOVES) + "," + violations);
+        }
+    }
+
+    // Move randomly chosen agents MOVES times; checks every move if asked and
+    // returns the number of moves that broke the rule
+    private static int run(int gridSize, int vision, boolean check) {
+        Random rng = new Random(8675309);
+        Landscape landscape = new Landscape(gridSize);
+        AgentStore store = new AgentStore(new DiseaseRegistry(0), 8);
+        Agent[] agents = new Agent[gridSize * gridSize / 5];
+        for (int i = 0; i < agents.length; i++) {
+            agents[i] = place(landscape, store, rng, i, vision);
+        }
+        // Deplete a third of the cells at random times so resource levels differ from capacities
+        for (int cell = 0; cell < gridSize * gridSize; cell++) {
+            if (rng.nextInt(3) == 0) {
+                landscape.removeResources(cell, rng.nextDouble() * 10);
+            }
+        }
+
+        int violations = 0;
+        double time = 10;
+        for (int i = 0; i < MOVES; i++) {
+            Agent a = agents[rng.nextInt(agents.length)];
+            time += 0.001;
+            if (!check) {
+                a.move(landscape, time);
+            } else {
+                int expected = bestLevel(landscape, a, time);
+                int from = landscape.index(a.getRow(), a.getCol());
+                a.move(landscape, time);
+                int to = landscape.index(a.getRow(), a.getCol());
+                if (!followsRule(landscape, a, from, to, time, expected)) {
+                    violations++;
+                }
+            }
+        }
+        return violations;
+    }
+
+    private static Agent place(Landscape landscape, AgentStore store, Random rng, int id, int vision) {
+        int size = landscape.getGridSize();
+        int cell;
+        do {
+            cell = rng.nextInt(size * size);
+        } while (landscape.isOccupied(cell));
+        Agent a = new Agent(store, id, 0, vision, 1, 10, 100, 0, new HeapGenome(8), new RandomStream(rng.nextLong()), new Census(0));
+        a.setRowCol(landscape.rowOf(cell), landscape.colOf(cell));
+        landscape.setOccupant(cell, a);
+        return a;
+    }
+
+    // Unoccupied cells in sight of an agent, as {cell, distance} pairs
+    private static int[][] inSight(Landscape landscape, Agent a) {
+        int size = landscape.getGridSize();
+        int vision = a.getVision();
+        int[][] cells = new int[4 * Math.max(0, vision - 1)][];
+        int n = 0;
+        for (int k = 1; k < vision; k++) {
+            int[] candidates = {
+                    landscape.index(a.getRow() + k, a.getCol()), landscape.index(a.getRow() - k, a.getCol()),
+                    landscape.index(a.getRow(), a.getCol() + k), landscape.index(a.getRow(), a.getCol() - k)
+            };
+            for (int cell : candidates) {
+                if (!landscape.isOccupied(cell)) {
+                    cells[n++] = new int[]{cell, Math.min(k, size - k)};
+                }
+            }
+        }
+        int[][] result = new int[n][];
+        System.arraycopy(cells, 0, result, 0, n);
+        return result;
+    }
+
+    // Index of a richest cell in sight before the move, or -1 if there is none
+    private static int bestLevel(Landscape landscape, Agent a, double time) {
+        int best = -1;
+        for (int[] c : inSight(landscape, a)) {
+            if (best < 0 || landscape.getResourceLevel(c[0], time) > landscape.getResourceLevel(best, time)) {
+                best = c[0];
+            }
+        }
+        return best;
+    }
+
+    private static boolean followsRule(Landscape landscape, Agent a, int from, int to, double time, int expected) {
+        if (expected < 0) {
+            return to == from;
+        }
+        double max = landscape.getResourceLevel(expected, time);
+        if (to == from || landscape.getOccupant(to) != a || landscape.isOccupied(from)
+                || landscape.getResourceLevel(to, time) != max) {
+            return false;
+        }
+        // The agent has moved, so measure distances from where it came from
+        a.setRowCol(landscape.rowOf(from), landscape.colOf(from));
+        landscape.setOccupant(to, null);
+        int chosenDist = Integer.MAX_VALUE;
+        int minDist = Integer.MAX_VALUE;
+        for (int[] c : inSight(landscape, a)) {
+            if (landscape.getResourceLevel(c[0], time) == max) {
+                minDist = Math.min(minDist, c[1]);
+                if (c[0] == to) {
+                    chosenDist = c[1];
+                }
+            }
+        }
+        landscape.setOccupant(to, a);
+        a.setRowCol(landscape.rowOf(to), landscape.colOf(to));
+        return chosenDist == minDist;
+    }
+
+    // On an untouched landscape the capacity is symmetric about the centre, so an agent
+    // there sees several equally rich cells at the same distance; each must be chosen
+    // about equally often
+    private static void checkTiesAreUniform() {
+        int size = 40;
+        int trials = 40000;
+        Random rng = new Random(42);
+        Landscape landscape = new Landscape(size);
+        Agent a = new Agent(new AgentStore(new DiseaseRegistry(0), 8), 0, 0, 3, 1, 10, 100, 0, new HeapGenome(8), new RandomStream(rng.nextLong()), new Census(0));
+        int home = landscape.index(size / 2, size / 2);
+        int[] counts = new int[size * size];
+        for (int i = 0; i < trials; i++) {
+            a.setRowCol(size / 2, size / 2);
+            landscape.setOccupant(home, a);
+            a.move(landscape, 0);
+            int to = landscape.index(a.getRow(), a.getCol());
+            counts[to]++;
+            landscape.setOccupant(to, null);
+        }
+
+        int chosen = 0;
+        for (int c : counts) {
+            if (c > 0) {
+                chosen++;
+            }
+        }
+        if (chosen < 2) {
+            throw new AssertionError("expected tied cells, but only one was ever chosen");
+        }
+        for (int c : counts) {
+            if (c > 0 && Math.abs(c - trials / chosen) > trials / chosen / 10) {
+                throw new AssertionError("tied cells chosen unevenly: " + c + " of " + trials + " over " + chosen);
+            }
+        }
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
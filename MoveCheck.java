@@ -0,0 +1,151 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+//======================================================================
+//* Check of Agent.chooseCell() against a brute-force reading of the
+//* movement rule.  On fixed seeds it builds small landscapes with many
+//* equally rich cells and many occupied ones, and for agents of every
+//* vision the grid allows it works out from scratch, by looking at
+//* every cell of the grid, which cells the agent may move to: the
+//* unoccupied cells in its line of sight with the most resources, and
+//* of those the closest.  The choice must be one of them, or -1 exactly
+//* when every cell in sight is occupied.  Where several cells tie, the
+//* choice is repeated and each must come up about equally often.
+//*
+//* Visions are kept below half the grid, so that no cell is in sight
+//* both ways around it.  Prints the number of choices checked and exits
+//* with status 1 on the first mismatch.  Run with
+//*   java MoveCheck
+//======================================================================
+class MoveCheck {
+    private static final long[] SEEDS = {8675309, 42, 1234567};
+    private static final int[] GRID_SIZES = {7, 16, 41};
+    private static final double[] DENSITIES = {0, 0.3, 0.7, 0.95};
+    private static final int PLACEMENTS = 50;
+    private static final int DRAWS_PER_TIE = 2000;
+    private static final double TIME = 1.5;
+
+    private static int checked = 0;
+    private static int tieSets = 0;
+
+    public static void main(String[] args) {
+        try {
+            for (long seed : SEEDS) {
+                for (int size : GRID_SIZES) {
+                    for (double density : DENSITIES) {
+                        check(seed, size, density);
+                    }
+                }
+            }
+        } catch (AssertionError e) {
+            System.out.println("MISMATCH: " + e.getMessage());
+            System.exit(1);
+        }
+        System.out.println("chooseCell matches the rule in " + checked + " choices, "
+                + tieSets + " of them ties checked for uniformity");
+    }
+
+    private static void check(long seed, int size, double density) {
+        Random rng = new Random(seed ^ size * 31L ^ Double.doubleToLongBits(density));
+        Landscape landscape = new Landscape(size);
+        // Depleting at a few times only leaves many cells equally rich at TIME
+        for (int cell = 0; cell < size * size; cell++) {
+            if (rng.nextInt(2) == 0) {
+                landscape.removeResources(cell, rng.nextInt(3));
+            }
+        }
+        AgentStore store = new AgentStore(new DiseaseRegistry(0), 8);
+        Agent blocker = agent(store, 0, 1, rng);
+        for (int cell = 0; cell < size * size; cell++) {
+            if (rng.nextDouble() < density) {
+                landscape.setOccupant(cell, blocker);
+            }
+        }
+
+        for (int vision = 1; 2 * (vision - 1) < size; vision++) {
+            Agent a = agent(store, 1, vision, rng);
+            for (int p = 0; p < PLACEMENTS; p++) {
+                int home = rng.nextInt(size * size);
+                Agent displaced = landscape.getOccupant(home);
+                landscape.setOccupant(home, a);
+                a.setRowCol(landscape.rowOf(home), landscape.colOf(home));
+
+                List<Integer> allowed = reference(landscape, a);
+                int chosen = a.chooseCell(landscape, TIME);
+                checked++;
+                String where = "seed " + seed + ", grid " + size + ", density " + density
+                        + ", vision " + vision + ", agent at " + home;
+                if (allowed.isEmpty() ? chosen != -1 : !allowed.contains(chosen)) {
+                    throw new AssertionError(where + ": chose " + chosen + ", allowed " + allowed);
+                }
+                if (allowed.size() > 1) {
+                    checkUniform(landscape, a, allowed, where);
+                }
+
+                landscape.setOccupant(home, displaced);
+            }
+        }
+    }
+
+    private static Agent agent(AgentStore store, int id, int vision, Random rng) {
+        return new Agent(store, id, 0, vision, 1, 10, 100, 0, new HeapGenome(8),
+                new RandomStream(rng.nextLong()), new Census(0));
+    }
+
+    // Every cell the rule allows the agent to move to, found by looking at the whole grid
+    private static List<Integer> reference(Landscape landscape, Agent a) {
+        int size = landscape.getGridSize();
+        double bestLevel = Double.NEGATIVE_INFINITY;
+        int bestDist = Integer.MAX_VALUE;
+        List<Integer> allowed = new ArrayList<>();
+        for (int cell = 0; cell < size * size; cell++) {
+            int dRow = Math.floorMod(landscape.rowOf(cell) - a.getRow(), size);
+            int dCol = Math.floorMod(landscape.colOf(cell) - a.getCol(), size);
+            if ((dRow != 0) == (dCol != 0) || landscape.isOccupied(cell)) {
+                continue;  // not in line, or the agent's own cell, or taken
+            }
+            int offset = dRow + dCol;
+            int dist = Math.min(offset, size - offset);
+            if (dist >= a.getVision()) {
+                continue;
+            }
+            double level = landscape.getResourceLevel(cell, TIME);
+            if (level > bestLevel || (level == bestLevel && dist < bestDist)) {
+                bestLevel = level;
+                bestDist = dist;
+                allowed.clear();
+            }
+            if (level == bestLevel && dist == bestDist) {
+                allowed.add(cell);
+            }
+        }
+        return allowed;
+    }
+
+    // Chi-squared test of repeated choices against a uniform spread over the tied cells,
+    // with a bound loose enough that the fixed seeds pass only a fair tie-break
+    private static void checkUniform(Landscape landscape, Agent a, List<Integer> allowed, String where) {
+        int m = allowed.size();
+        int draws = DRAWS_PER_TIE * m;
+        int[] counts = new int[m];
+        for (int i = 0; i < draws; i++) {
+            int index = allowed.indexOf(a.chooseCell(landscape, TIME));
+            if (index < 0) {
+                throw new AssertionError(where + ": a repeated choice left the allowed cells " + allowed);
+            }
+            counts[index]++;
+        }
+        double expected = (double) draws / m;
+        double chiSquared = 0;
+        for (int c : counts) {
+            chiSquared += (c - expected) * (c - expected) / expected;
+        }
+        double bound = (m - 1) + 6 * Math.sqrt(2.0 * (m - 1)) + 10;
+        if (chiSquared > bound) {
+            throw new AssertionError(where + ": ties chosen unevenly over " + allowed
+                    + ", chi-squared " + String.format("%.1f", chiSquared));
+        }
+        tieSets++;
+    }
+}
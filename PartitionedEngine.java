@@ -0,0 +1,226 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+//======================================================================
+//* Parallel engine.  The landscape is cut into horizontal bands, each
+//* with its own event calendar, and time is cut into short windows.  In
+//* every window the even bands process their events concurrently, then
+//* the odd bands do.  An event reaches at most getMaxVision() rows from
+//* its agent, and bands are more than twice that tall, so no two bands
+//* of the same parity ever touch the same cell or agent: no locks are
+//* needed and within a band events keep their serial order.
+//*
+//* What is not serial is the order across bands: an event in an odd
+//* band is processed after the even bands' events of the same window,
+//* even if it is earlier.  This changes only which of two nearby agents
+//* on either side of a band edge acts first, and the landscape tolerates
+//* the resulting small steps back in time.  No window avoids it: events
+//* are exponentially spaced, so there is no least time between two
+//* events across a band edge to serve as a lookahead.  The window is a
+//* trade instead, and the default was measured with EngineComparison,
+//* which pairs each replication with the serial one of the same seed:
+//* on 100x100 with 3000 agents to time 50 over 200 seeds, partitioned
+//* ended with 19.7 +/- 9.2 more healthy agents than serial with a 0.1
+//* window, and 0.5 +/- 10.2 with 0.01.
+//*
+//* Between phases, serially:
+//*   - agents that moved into another band have their next event put
+//*     on that band's calendar
+//*   - after both phases, dead agents are replaced in order of death,
+//*     which uses the simulation's own random stream and registry.
+//======================================================================
+class PartitionedEngine implements Engine {
+    static final double DEFAULT_WINDOW = 0.01;
+    private static final int MAX_BANDS = 64;  // enough for 32 threads per phase
+
+    private final Simulation simulation;
+    private final double window;
+    private final int threads;
+
+    private Band[] bands = new Band[0];
+    private int bandHeight;
+    private int reach;  // the vision the layout was made for
+
+    PartitionedEngine(Simulation simulation, double window, int threads) {
+        if (!(window > 0)) {
+            throw new IllegalArgumentException("Window must be positive, not " + window);
+        }
+        this.simulation = simulation;
+        this.window = window;
+        this.threads = threads;
+    }
+
+    @Override
+    public boolean runUntil(double endTime) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            layout();
+            double windowEnd = simulation.getTime();
+            double lastTime = simulation.getTime();
+            while (true) {
+                double earliest = Double.POSITIVE_INFINITY;
+                for (Band b : bands) {
+                    earliest = Math.min(earliest, b.calendar.peekTime());
+                }
+                if (earliest >= endTime) {
+                    break;
+                }
+                windowEnd = Math.min(Math.max(windowEnd, earliest) + window, endTime);
+
+                for (int parity = 0; parity < 2; parity++) {
+                    runPhase(pool, parity, windowEnd);
+                    for (Band b : bands) {
+                        b.placeMigrants();
+                        lastTime = Math.max(lastTime, b.lastTime);
+                    }
+                }
+                replaceDead();
+                scatter();
+                if (simulation.getMaxVision() != reach) {
+                    gather();
+                    layout();
+                }
+            }
+            simulation.setTime(lastTime);
+            gather();
+            return simulation.getEventCalendar().size() > 0;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void runPhase(ForkJoinPool pool, int parity, double windowEnd) {
+        try {
+            pool.submit(() -> IntStream.range(0, bands.length)
+                    .filter(b -> b % 2 == parity)
+                    .parallel()
+                    .forEach(b -> bands[b].run(windowEnd))
+            ).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running a phase", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Band failed", e.getCause());
+        }
+    }
+
+    // Cut the grid into an even number of bands at least 2 * reach + 1 rows tall, or
+    // into one band if it is too small for two, and move all events onto them.  The
+    // layout does not depend on the number of threads, and neither do the results.
+    private void layout() {
+        int size = simulation.getGridSize();
+        reach = simulation.getMaxVision();
+        int count = Math.min(size / (2 * reach + 1), MAX_BANDS);
+        count = count < 2 ? 1 : count - count % 2;
+        bandHeight = size / count;
+
+        bands = new Band[count];
+        for (int b = 0; b < count; b++) {
+            bands[b] = new Band(b);
+        }
+        scatter();
+    }
+
+    private int bandOf(int row) {
+        return Math.min(row / bandHeight, bands.length - 1);
+    }
+
+    // Move the events on the simulation's calendar onto the bands of their agents
+    private void scatter() {
+        EventCalendar from = simulation.getEventCalendar();
+        Event e = new Event();
+        while (from.poll(e)) {
+            Agent a = simulation.agents.get(e.getTarget());
+            a.scheduleNewEvent(e.getKind(), e.getTime());
+            a.scheduleNextEvent(bands[bandOf(a.getRow())].calendar);
+        }
+    }
+
+    // Move all events back onto the simulation's calendar
+    private void gather() {
+        EventCalendar to = simulation.getEventCalendar();
+        Event e = new Event();
+        for (Band b : bands) {
+            while (b.calendar.poll(e)) {
+                Agent a = simulation.agents.get(e.getTarget());
+                a.scheduleNewEvent(e.getKind(), e.getTime());
+                a.scheduleNextEvent(to);
+            }
+            to.addStaleSkipped(b.calendar.getStaleSkipped());
+        }
+        bands = new Band[0];
+    }
+
+    // Replace the agents that died in this window, earliest death first; each band's
+    // deaths are already in time order, so this merges them
+    private void replaceDead() {
+        int[] next = new int[bands.length];
+        while (true) {
+            int first = -1;
+            for (int b = 0; b < bands.length; b++) {
+                if (next[b] < bands[b].dead.size() && (first < 0
+                        || bands[b].deathTimes[next[b]] < bands[first].deathTimes[next[first]])) {
+                    first = b;
+                }
+            }
+            if (first < 0) {
+                break;
+            }
+            Band b = bands[first];
+            simulation.replace(b.dead.get(next[first]), b.deathTimes[next[first]]);
+            next[first]++;
+        }
+        for (Band b : bands) {
+            b.dead.clear();
+        }
+    }
+
+    //======================================================================
+    //* One band of rows: its calendar, and what its last phase left for the
+    //* serial step.  Only the thread running the band touches it during a
+    //* phase.
+    //======================================================================
+    private final class Band {
+        final int index;
+        final EventCalendar calendar;
+        final Event event = new Event();
+        final ArrayList<Agent> migrants = new ArrayList<>();
+        final ArrayList<Agent> dead = new ArrayList<>();
+        double[] deathTimes = new double[16];
+        double lastTime = Double.NEGATIVE_INFINITY;
+
+        Band(int index) {
+            this.index = index;
+            this.calendar = new EventCalendar(simulation.agents, Scheduler.fromSystemProperty());
+        }
+
+        void run(double windowEnd) {
+            while (calendar.peekTime() < windowEnd) {
+                calendar.poll(event);
+                Agent agent = simulation.agents.get(event.getTarget());
+                lastTime = Math.max(lastTime, event.getTime());
+                if (!simulation.handle(agent, event.getKind(), event.getTime())) {
+                    if (dead.size() == deathTimes.length) {
+                        deathTimes = Arrays.copyOf(deathTimes, 2 * deathTimes.length);
+                    }
+                    deathTimes[dead.size()] = event.getTime();
+                    dead.add(agent);
+                } else if (bandOf(agent.getRow()) == index) {
+                    agent.scheduleNextEvent(calendar);
+                } else {
+                    migrants.add(agent);
+                }
+            }
+        }
+
+        void placeMigrants() {
+            for (Agent a : migrants) {
+                a.scheduleNextEvent(bands[bandOf(a.getRow())].calendar);
+            }
+            migrants.clear();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+//======================================================================
+//* A histogram of non-negative values, usually nanoseconds, laid out
+//* like HdrHistogram: values below 32 get a bucket each, and every
+//* power of two above that is split into 16 equal buckets, so any
+//* recorded value is known to within 1/16.  The buckets are a fixed
+//* array, so recording allocates nothing, and they are atomic, so the
+//* parallel engines can record from several threads.
+//======================================================================
+class Probe implements ProbeMBean {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final String name;
+    private final String unit;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    Probe(String name, String unit) {
+        this.name = name;
+        this.unit = unit;
+    }
+
+    // The top SUB_BITS + 1 bits of the value pick its bucket
+    static int bucketOf(long value) {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BITS);
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    // Smallest value that falls in the bucket
+    static long lowestIn(int bucket) {
+        int shift = Math.max(0, bucket / SUB_BUCKETS - 1);
+        return (long) (bucket - shift * SUB_BUCKETS) << shift;
+    }
+
+    void record(long value) {
+        if (value < 0) {
+            return;
+        }
+        counts.incrementAndGet(bucketOf(value));
+        total.incrementAndGet();
+        sum.addAndGet(value);
+        long m = max.get();
+        while (value > m && !max.compareAndSet(m, value)) {
+            m = max.get();
+        }
+    }
+
+    // Record the nanoseconds since start, a System.nanoTime() reading
+    void recordSince(long start) {
+        record(System.nanoTime() - start);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    @Override
+    public String getUnit() {
+        return unit;
+    }
+
+    @Override
+    public long getCount() {
+        return total.get();
+    }
+
+    @Override
+    public double getMean() {
+        long n = total.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    @Override
+    public long getP50() {
+        return percentile(0.5);
+    }
+
+    @Override
+    public long getP99() {
+        return percentile(0.99);
+    }
+
+    @Override
+    public long getMax() {
+        return max.get();
+    }
+
+    // The lowest value of the bucket holding the value at rank p
+    long percentile(double p) {
+        long n = total.get();
+        if (n == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(p * n));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts.get(b);
+            if (seen >= rank) {
+                return lowestIn(b);
+            }
+        }
+        return max.get();
+    }
+}
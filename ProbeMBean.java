@@ -0,0 +1,17 @@
+//======================================================================
+//* What JMX shows of a Probe.  Values are in the probe's unit:
+//* nanoseconds for timers, events for the calendar size.
+//======================================================================
+public interface ProbeMBean {
+    String getUnit();
+
+    long getCount();
+
+    double getMean();
+
+    long getP50();
+
+    long getP99();
+
+    long getMax();
+}
@@ -0,0 +1,118 @@
+import java.io.IOException;
+
+//======================================================================
+//* A stream of random numbers from the SplitMix64 generator, the one
+//* behind java.util.SplittableRandom.  A stream is not thread safe and
+//* is never shared: each replication starts from its own seed, and
+//* split() derives an independent child stream for every agent, so the
+//* numbers an agent draws do not depend on what other agents, or other
+//* threads, draw in between.
+//*
+//* SplittableRandom itself is not used because it has no nextGaussian()
+//* and does not expose its state.
+//======================================================================
+final class RandomStream {
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private long seed;
+    private final long gamma;  // odd increment; distinct per stream
+    private double nextGaussian;
+    private boolean haveNextGaussian = false;
+
+    RandomStream(long seed) {
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    private RandomStream(long seed, long gamma) {
+        this.seed = seed;
+        this.gamma = gamma;
+    }
+
+    // A new stream whose numbers are independent of this one's
+    RandomStream split() {
+        return new RandomStream(nextLong(), mixGamma(nextSeed()));
+    }
+
+    // The whole state, including a pending Gaussian, so that a restored stream
+    // continues exactly where this one left off
+    void writeTo(CheckpointWriter out) throws IOException {
+        out.putLong(seed);
+        out.putLong(gamma);
+        out.putBoolean(haveNextGaussian);
+        out.putDouble(nextGaussian);
+    }
+
+    static RandomStream readFrom(CheckpointReader in) throws IOException {
+        RandomStream stream = new RandomStream(in.getLong(), in.getLong());
+        stream.haveNextGaussian = in.getBoolean();
+        stream.nextGaussian = in.getDouble();
+        return stream;
+    }
+
+    long nextLong() {
+        return mix64(nextSeed());
+    }
+
+    // Uniform in [0, bound), without modulo bias
+    int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+        int r = mix32(nextSeed());
+        int m = bound - 1;
+        if ((bound & m) == 0) {
+            return r & m;
+        }
+        for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = mix32(nextSeed()) >>> 1) {
+            // reject values from the incomplete last block
+        }
+        return r;
+    }
+
+    // Uniform in [0, 1)
+    double nextDouble() {
+        return (nextLong() >>> 11) * 0x1.0p-53;
+    }
+
+    // Standard normal, by the polar method as in java.util.Random
+    double nextGaussian() {
+        if (haveNextGaussian) {
+            haveNextGaussian = false;
+            return nextGaussian;
+        }
+        double v1, v2, s;
+        do {
+            v1 = 2 * nextDouble() - 1;
+            v2 = 2 * nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+        double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+        nextGaussian = v2 * multiplier;
+        haveNextGaussian = true;
+        return v1 * multiplier;
+    }
+
+    private long nextSeed() {
+        return seed += gamma;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int mix32(long z) {
+        z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+        return (int) (((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+    }
+
+    // Gammas with too few bit transitions give poorly mixed streams; flip them
+    private static long mixGamma(long z) {
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        int n = Long.bitCount(z ^ (z >>> 1));
+        return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+}
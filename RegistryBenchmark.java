@@ -0,0 +1,242 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+//======================================================================
+//* Self-check and scaling benchmark for AgentRegistry and EventCalendar.
+//*
+//* The checks follow random births and deaths against a plain model of
+//* which handle holds which generation: a handle of a dead agent must
+//* stop being current as soon as it is released and stay so after the
+//* handle is reused, the calendar must hand out exactly the events of
+//* live agents in time order and drop the rest, and a generation that
+//* has reached Integer.MAX_VALUE must wrap to MIN_VALUE without making
+//* an old event current again.  A failure throws, so the exit status is
+//* non-zero.
+//*
+//* The benchmark then runs a population of 10k, 100k and 1M agents in
+//* which every agent has a pending move and death: a move schedules the
+//* next move, and a death releases the handle to a newborn whose events
+//* go on the calendar while the dead agent's move goes stale.  It prints
+//* ns per live event and the share of events dropped as stale.  The
+//* first agents are of all ages, so the population starts out as it
+//* goes on.  Run with
+//*   java RegistryBenchmark [population...]
+//======================================================================
+class RegistryBenchmark {
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) {
+        checkStaleHandles();
+        checkGenerationWraps();
+        System.out.println("registry and calendar checks passed");
+
+        int[] sizes = {10000, 100000, 1000000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        System.out.println("agents,ns/event,stale%");
+        for (int n : sizes) {
+            long events = Math.max(2000000L, 2L * n);
+            long best = Long.MAX_VALUE;
+            double stale = 0;
+            // The first rounds only warm up the JIT; keep the fastest
+            for (int round = 0; round < ROUNDS; round++) {
+                Population p = new Population(n, new Random(8675309));
+                long start = System.nanoTime();
+                p.run(events);
+                best = Math.min(best, System.nanoTime() - start);
+                stale = 100.0 * p.calendar.getStaleSkipped() / (events + p.calendar.getStaleSkipped());
+            }
+            System.out.println(n + "," + String.format("%.1f", (double) best / events) + ","
+                    + String.format("%.1f", stale));
+        }
+    }
+
+    // Random births, deaths and events, checked at every step against the model
+    private static void checkStaleHandles() {
+        Random rng = new Random(42);
+        AgentStore store = new AgentStore(new DiseaseRegistry(0), 8);
+        AgentRegistry registry = new AgentRegistry();
+        EventCalendar calendar = new EventCalendar(registry, Scheduler.forName("heap"));
+        int[] liveGeneration = new int[64];   // the model: generation of the agent on each handle
+        boolean[] live = new boolean[64];
+        boolean[] used = new boolean[64];
+        long scheduled = 0;
+        long expectedStale = 0;
+        int[] pending = new int[64];          // events scheduled for each handle's current agent
+
+        double time = 0;
+        for (int step = 0; step < 100000; step++) {
+            int handle = rng.nextInt(live.length);
+            if (!live[handle] && registry.size() < live.length) {
+                // A birth takes whichever handle the registry offers
+                int h = registry.nextHandle();
+                if (h >= live.length || live[h]) {
+                    throw new AssertionError("registry handed out live handle " + h);
+                }
+                Agent a = agent(store, h, registry.generationOf(h), rng);
+                if (used[h] && a.getGeneration() != liveGeneration[h] + 1) {
+                    throw new AssertionError("handle " + h + " reused with generation " + a.getGeneration()
+                            + " after " + liveGeneration[h]);
+                }
+                used[h] = true;
+                registry.put(h, a);
+                live[h] = true;
+                liveGeneration[h] = a.getGeneration();
+                pending[h] = 0;
+            } else if (live[handle] && rng.nextInt(4) == 0) {
+                int old = liveGeneration[handle];
+                registry.release(handle);
+                live[handle] = false;
+                expectedStale += pending[handle];
+                pending[handle] = -1;
+                if (registry.isCurrent(handle, old)) {
+                    throw new AssertionError("released handle " + handle + " is still current");
+                }
+            } else if (live[handle]) {
+                calendar.schedule(time + rng.nextDouble(), EventKind.MOVE, registry.get(handle));
+                pending[handle]++;
+                scheduled++;
+            }
+            for (int h = 0; h < live.length; h++) {
+                if (h < registry.capacity() && registry.isCurrent(h, liveGeneration[h]) != live[h]) {
+                    throw new AssertionError("handle " + h + " current " + !live[h] + ", expected " + live[h]);
+                }
+            }
+
+            // Now and then let time pass and deliver the due events
+            if (rng.nextInt(50) == 0) {
+                time += 1;
+                Event e = new Event();
+                double last = Double.NEGATIVE_INFINITY;
+                while (calendar.peekTime() <= time && calendar.poll(e)) {
+                    int h = e.getTarget();
+                    if (!live[h] || e.getGeneration() != liveGeneration[h]) {
+                        throw new AssertionError("event delivered to dead agent " + h + "/" + e.getGeneration());
+                    }
+                    if (e.getTime() < last) {
+                        throw new AssertionError("events out of order at " + e.getTime());
+                    }
+                    last = e.getTime();
+                    pending[h]--;
+                    scheduled--;
+                }
+            }
+        }
+        Event e = new Event();
+        while (calendar.poll(e)) {
+            int h = e.getTarget();
+            if (!live[h] || e.getGeneration() != liveGeneration[h]) {
+                throw new AssertionError("event delivered to dead agent " + h + "/" + e.getGeneration());
+            }
+            pending[h]--;
+            scheduled--;
+        }
+        if (scheduled != expectedStale || calendar.getStaleSkipped() != expectedStale) {
+            throw new AssertionError("expected " + expectedStale + " stale events, dropped "
+                    + calendar.getStaleSkipped() + " with " + scheduled + " undelivered");
+        }
+    }
+
+    // A handle whose generation is Integer.MAX_VALUE, as after 2^31 deaths, restored from a
+    // checkpoint since there is no faster way to get there
+    private static void checkGenerationWraps() {
+        AgentRegistry registry = new AgentRegistry();
+        try {
+            Path file = Files.createTempFile("registry", ".ckpt");
+            try {
+                try (CheckpointWriter out = new CheckpointWriter(file)) {
+                    out.putInt(1);                                   // handles
+                    out.putInts(new int[]{Integer.MAX_VALUE}, 0, 1); // their generations
+                    out.putInt(1);                                   // free handles
+                    out.putInts(new int[]{0}, 0, 1);
+                    out.putInt(0);                                   // live agents
+                }
+                try (CheckpointReader in = new CheckpointReader(file)) {
+                    registry.readFrom(in, null, null, null);
+                }
+            } finally {
+                Files.delete(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write a checkpoint for the wrap-around check", e);
+        }
+
+        Random rng = new Random(7);
+        AgentStore store = new AgentStore(new DiseaseRegistry(0), 8);
+        EventCalendar calendar = new EventCalendar(registry, Scheduler.forName("heap"));
+        int h = registry.nextHandle();
+        Agent old = agent(store, h, registry.generationOf(h), rng);
+        if (h != 0 || old.getGeneration() != Integer.MAX_VALUE) {
+            throw new AssertionError("restored registry gave handle " + h + "/" + old.getGeneration());
+        }
+        registry.put(h, old);
+        calendar.schedule(1, EventKind.MOVE, old);
+        registry.release(h);
+
+        int again = registry.nextHandle();
+        Agent young = agent(store, again, registry.generationOf(again), rng);
+        if (again != 0 || young.getGeneration() != Integer.MIN_VALUE) {
+            throw new AssertionError("generation after MAX_VALUE is " + young.getGeneration());
+        }
+        registry.put(again, young);
+        calendar.schedule(2, EventKind.MOVE, young);
+        if (registry.isCurrent(0, Integer.MAX_VALUE) || !registry.isCurrent(0, Integer.MIN_VALUE)) {
+            throw new AssertionError("wrapped generation not told apart from the old one");
+        }
+
+        Event e = new Event();
+        if (!calendar.poll(e) || e.getTime() != 2 || e.getGeneration() != Integer.MIN_VALUE
+                || calendar.poll(e) || calendar.getStaleSkipped() != 1) {
+            throw new AssertionError("wrapped generation: the old agent's event was not dropped");
+        }
+    }
+
+    private static Agent agent(AgentStore store, int handle, int generation, Random rng) {
+        return new Agent(store, handle, generation, 1, 1, 10, 100, 0, new HeapGenome(8),
+                new RandomStream(rng.nextLong()), new Census(0));
+    }
+
+    // Agents that move at exponential(1) intervals and die after uniform(60, 100)
+    private static final class Population {
+        final AgentStore store = new AgentStore(new DiseaseRegistry(0), 8);
+        final AgentRegistry registry = new AgentRegistry();
+        final EventCalendar calendar = new EventCalendar(registry, Scheduler.forName("heap"));
+        final Random rng;
+
+        Population(int n, Random rng) {
+            this.rng = rng;
+            // The first agents are of all ages, so that deaths start at once
+            for (int i = 0; i < n; i++) {
+                born(0, 100 * rng.nextDouble());
+            }
+        }
+
+        private void born(double time, double lifetime) {
+            int h = registry.nextHandle();
+            Agent a = agent(store, h, registry.generationOf(h), rng);
+            registry.put(h, a);
+            calendar.schedule(time - Math.log(1 - rng.nextDouble()), EventKind.MOVE, a);
+            calendar.schedule(time + lifetime, EventKind.DEATH, a);
+        }
+
+        void run(long events) {
+            Event e = new Event();
+            for (long i = 0; i < events && calendar.poll(e); i++) {
+                if (e.getKind() == EventKind.DEATH) {
+                    registry.release(e.getTarget());
+                    born(e.getTime(), 60 + 40 * rng.nextDouble());
+                } else {
+                    calendar.schedule(e.getTime() - Math.log(1 - rng.nextDouble()), EventKind.MOVE,
+                            registry.get(e.getTarget()));
+                }
+            }
+        }
+    }
+}
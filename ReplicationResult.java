@@ -0,0 +1,63 @@
+//======================================================================
+//* Outcome of one replication: the seed it ran with, the population at
+//* the end of the run and what the run cost.  Immutable so results can
+//* be handed between the threads of the ReplicationRunner.
+//======================================================================
+final class ReplicationResult {
+    private final int seed;
+    private final long numHealthy;
+    private final long numInfected;
+    private final long staleEventsSkipped;
+    private final long immunityCacheHits;
+    private final long immunityCacheMisses;
+    private final long allocatedBytes;  // -1 if the JVM cannot measure it
+
+    ReplicationResult(int seed, long numHealthy, long numInfected, long staleEventsSkipped,
+                      long immunityCacheHits, long immunityCacheMisses, long allocatedBytes) {
+        this.seed = seed;
+        this.numHealthy = numHealthy;
+        this.numInfected = numInfected;
+        this.staleEventsSkipped = staleEventsSkipped;
+        this.immunityCacheHits = immunityCacheHits;
+        this.immunityCacheMisses = immunityCacheMisses;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    ReplicationResult withAllocatedBytes(long bytes) {
+        return new ReplicationResult(seed, numHealthy, numInfected, staleEventsSkipped,
+                immunityCacheHits, immunityCacheMisses, bytes);
+    }
+
+    int getSeed() {
+        return seed;
+    }
+
+    long getNumHealthy() {
+        return numHealthy;
+    }
+
+    long getNumInfected() {
+        return numInfected;
+    }
+
+    long getStaleEventsSkipped() {
+        return staleEventsSkipped;
+    }
+
+    long getImmunityCacheHits() {
+        return immunityCacheHits;
+    }
+
+    long getImmunityCacheMisses() {
+        return immunityCacheMisses;
+    }
+
+    long getAllocatedBytes() {
+        return allocatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return numHealthy + "," + numInfected;
+    }
+}
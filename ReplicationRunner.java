@@ -0,0 +1,147 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Collectors;
+
+//======================================================================
+//* Runs independent headless replications across a fork-join pool.
+//* Seeds for all replications are drawn up front from one master seed,
+//* so a study gives the same results whatever the number of threads.
+//======================================================================
+class ReplicationRunner {
+    private final int gridSize;
+    private final int numAgents;
+    private final double maxTime;
+    private final int threads;
+
+    ReplicationRunner(int gridSize, int numAgents, double maxTime, int threads) {
+        this.gridSize = gridSize;
+        this.numAgents = numAgents;
+        this.maxTime = maxTime;
+        this.threads = threads;
+    }
+
+    // Results are returned in replication order
+    List<ReplicationResult> run(int masterSeed, int replications) {
+        RandomStream seeds = new RandomStream(masterSeed);
+        int[] replicationSeeds = new int[replications];
+        for (int i = 0; i < replications; i++) {
+            replicationSeeds[i] = seeds.nextInt(Integer.MAX_VALUE);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            return pool.submit(() -> Arrays.stream(replicationSeeds)
+                    .parallel()
+                    .mapToObj(this::runOne)
+                    .collect(Collectors.toList())
+            ).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running replications", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Replication failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Each replication runs start to finish on one worker thread, so that thread's
+    // allocation counter measures it
+    private ReplicationResult runOne(int seed) {
+        long allocatedBefore = allocatedBytes();
+        Simulation simulation = newSimulation(seed);
+        Engine engine = Engine.fromSystemProperty(simulation);
+        String metricsDir = System.getProperty("metrics");
+        if (metricsDir == null) {
+            engine.runUntil(maxTime);
+        } else {
+            runWithMetrics(simulation, engine, Paths.get(metricsDir).resolve("metrics-" + seed + ".csv"));
+        }
+        ReplicationResult result = simulation.getResult();
+        long allocatedAfter = allocatedBytes();
+        return result.withAllocatedBytes(allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore);
+    }
+
+    // With -Dcheckpoint=<file>, every replication is a fork of the saved simulation
+    // and runs on from its time; the grid size and agent count are the checkpoint's
+    private Simulation newSimulation(int seed) {
+        String checkpoint = System.getProperty("checkpoint");
+        if (checkpoint == null) {
+            return new Simulation(gridSize, numAgents, seed);
+        }
+        try {
+            return Checkpoint.fork(Paths.get(checkpoint), seed);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read " + checkpoint, e);
+        }
+    }
+
+    // With -Dmetrics=<dir>, stop every -DmetricsInterval time units (default 1) and
+    // write a snapshot to <dir>/metrics-<seed>.csv
+    private void runWithMetrics(Simulation simulation, Engine engine, Path file) {
+        double interval = Double.parseDouble(System.getProperty("metricsInterval", "1"));
+        if (!(interval > 0)) {
+            throw new IllegalArgumentException("metricsInterval must be positive: " + interval);
+        }
+        try (MetricsSink sink = new MetricsSink(file)) {
+            double start = simulation.getTime();
+            sink.submit(MetricsSnapshot.of(simulation, start));
+            for (int i = 1; start + (i - 1) * interval < maxTime; i++) {
+                double time = Math.min(start + i * interval, maxTime);
+                engine.runUntil(time);
+                sink.submit(MetricsSnapshot.of(simulation, time));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write " + file, e);
+        }
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    static double mean(List<ReplicationResult> results, ToDoubleFunction<ReplicationResult> measure) {
+        return results.stream().mapToDouble(measure).average().orElse(Double.NaN);
+    }
+
+    // Half-width of the 95% confidence interval for the mean of the measure
+    static double confidenceHalfWidth(List<ReplicationResult> results, ToDoubleFunction<ReplicationResult> measure) {
+        return confidenceHalfWidth(results.stream().mapToDouble(measure).toArray());
+    }
+
+    static double confidenceHalfWidth(double[] values) {
+        int n = values.length;
+        if (n < 2) {
+            return Double.NaN;
+        }
+        double mean = Arrays.stream(values).average().getAsDouble();
+        double sumSquares = Arrays.stream(values)
+                .map(v -> Math.pow(v - mean, 2))
+                .sum();
+        double stdDev = Math.sqrt(sumSquares / (n - 1));
+        return studentT975(n - 1) * stdDev / Math.sqrt(n);
+    }
+
+    // 97.5% quantile of Student's t from its Cornish-Fisher expansion about the normal,
+    // within 0.03 of the tables from 3 degrees of freedom up
+    private static double studentT975(int degreesOfFreedom) {
+        double z = 1.959964;
+        double v = degreesOfFreedom;
+        return z + (Math.pow(z, 3) + z) / (4 * v)
+                + (5 * Math.pow(z, 5) + 16 * Math.pow(z, 3) + 3 * z) / (96 * v * v)
+                + (3 * Math.pow(z, 7) + 19 * Math.pow(z, 5) + 17 * Math.pow(z, 3) - 15 * z) / (384 * v * v * v);
+    }
+}
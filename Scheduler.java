@@ -0,0 +1,39 @@
+//======================================================================
+//* Priority queue of pending events behind the EventCalendar.  Every
+//* implementation pops events in increasing time and breaks ties by the
+//* order in which they were pushed, so all of them replay a simulation
+//* in exactly the same order.
+//*
+//* The implementation is picked with -Dscheduler=heap|calendar|ladder
+//* and defaults to the binary heap.
+//======================================================================
+interface Scheduler {
+    void push(double time, EventKind kind, int agent, int generation);
+
+    // Copy the earliest event into the handle and remove it
+    void pop(Event into);
+
+    // Copy the earliest event into the handle without removing it
+    void peek(Event into);
+
+    boolean isEmpty();
+
+    int size();
+
+    static Scheduler forName(String name) {
+        switch (name) {
+            case "heap":
+                return new EventHeap();
+            case "calendar":
+                return new CalendarQueue();
+            case "ladder":
+                return new LadderQueue();
+            default:
+                throw new IllegalArgumentException("Unknown scheduler: " + name);
+        }
+    }
+
+    static Scheduler fromSystemProperty() {
+        return forName(System.getProperty("scheduler", "heap"));
+    }
+}
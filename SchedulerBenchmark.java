@@ -0,0 +1,202 @@
+import java.util.Arrays;
+import java.util.Random;
+
+//======================================================================
+//* Benchmark for the Scheduler implementations, on two workloads.
+//*
+//* Traces: a real simulation is run with Simulation.runUntil() on a
+//* scheduler that records every push, peek and pop, and each scheduler
+//* then replays exactly that sequence of calls.  This is the workload
+//* the calendar sees, at the queue sizes small simulations reach.
+//*
+//* Hold model: a synthetic stand-in for queues too large to record a
+//* run of.  The queue is filled with one event per agent, then each
+//* step pops the earliest event and pushes that agent's next one, of a
+//* kind drawn uniformly, with the delay drawn the same way
+//* Simulation.step() does for that kind:
+//*   MOVE             exponential(1)
+//*   MUTATE           uniform(3, 7)
+//*   IMMUNE_RESPONSE  |normal(1, 1)|
+//*   DEATH            uniform(60, 100), the lifetime of the replacement
+//* Unlike a real run, every event is rescheduled, none goes stale, and
+//* the mix of kinds does not depend on the agents' state.
+//*
+//* Every scheduler replays the same calls, and the order of the popped
+//* events (time, kind, agent and generation) is hashed so a scheduler
+//* that disagrees is reported.  Run with
+//*   java SchedulerBenchmark [eventsInQueue...]
+//======================================================================
+class SchedulerBenchmark {
+    private static final String[] SCHEDULERS = {"heap", "calendar", "ladder"};
+    private static final int ROUNDS = 5;
+    // Simulations to record: grid size, agents, and how long to run them
+    private static final int[][] TRACES = {{40, 400, 100}, {150, 5600, 20}, {300, 22500, 5}};
+
+    public static void main(String[] args) {
+        int[] sizes = {400, 10000, 100000, 1000000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.println("trace,calls,scheduler,ns/call,orderHash");
+        for (int[] t : TRACES) {
+            Trace trace = new Trace();
+            new Simulation(t[0], t[1], 8675309, trace).runUntil(t[2]);
+            long expectedHash = 0;
+            for (String name : SCHEDULERS) {
+                long best = Long.MAX_VALUE;
+                long hash = 0;
+                // The first rounds only warm up the JIT; keep the fastest
+                for (int round = 0; round < ROUNDS; round++) {
+                    long start = System.nanoTime();
+                    hash = trace.replay(Scheduler.forName(name));
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                if (name.equals(SCHEDULERS[0])) {
+                    expectedHash = hash;
+                }
+                System.out.println(t[0] + "x" + t[1] + "," + trace.calls + "," + name + ","
+                        + String.format("%.1f", (double) best / trace.calls) + "," + Long.toHexString(hash)
+                        + (hash == expectedHash && hash == trace.hash ? "" : ",MISMATCH"));
+            }
+        }
+
+        System.out.println("events,scheduler,ns/hold,orderHash");
+        for (int n : sizes) {
+            long holds = Math.max(2000000L, 10L * n);
+            long expectedHash = 0;
+            for (String name : SCHEDULERS) {
+                long best = Long.MAX_VALUE;
+                long hash = 0;
+                // The first rounds only warm up the JIT; keep the fastest
+                for (int round = 0; round < ROUNDS; round++) {
+                    long start = System.nanoTime();
+                    hash = hold(Scheduler.forName(name), n, holds);
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                if (name.equals(SCHEDULERS[0])) {
+                    expectedHash = hash;
+                }
+                System.out.println(n + "," + name + "," + String.format("%.1f", (double) best / holds)
+                        + "," + Long.toHexString(hash) + (hash == expectedHash ? "" : ",MISMATCH"));
+            }
+        }
+    }
+
+    // Run the hold model and return a hash of the order in which events were popped
+    static long hold(Scheduler scheduler, int n, long holds) {
+        Random rng = new Random(8675309);
+        Event e = new Event();
+        for (int agent = 0; agent < n; agent++) {
+            EventKind kind = EventKind.VALUES[rng.nextInt(EventKind.AGENT_KINDS)];
+            scheduler.push(delay(kind, rng), kind, agent, 0);
+        }
+
+        long hash = 0;
+        for (long i = 0; i < holds; i++) {
+            scheduler.pop(e);
+            hash = hash(hash, e);
+
+            EventKind kind = EventKind.VALUES[rng.nextInt(EventKind.AGENT_KINDS)];
+            scheduler.push(e.getTime() + delay(kind, rng), kind, e.getTarget(), 0);
+        }
+        return hash;
+    }
+
+    // Fold a popped event into the hash of the order so far
+    private static long hash(long hash, Event e) {
+        hash = 31 * hash + Double.doubleToLongBits(e.getTime());
+        hash = 31 * hash + e.getKind().ordinal();
+        hash = 31 * hash + e.getTarget();
+        return 31 * hash + e.getGeneration();
+    }
+
+    private static double delay(EventKind kind, Random rng) {
+        switch (kind) {
+            case MOVE:
+                return Math.log(1 - rng.nextDouble()) / -1.0;
+            case MUTATE:
+                return rng.nextDouble() * 4 + 3;
+            case IMMUNE_RESPONSE:
+                return Math.abs(rng.nextGaussian() + 1);
+            default:
+                return rng.nextDouble() * 40 + 60;
+        }
+    }
+
+    // A binary heap that records every call made on it, to be replayed on other schedulers
+    private static final class Trace implements Scheduler {
+        private static final byte PEEK = -1;
+        private static final byte POP = -2;
+
+        private final Scheduler heap = new EventHeap();
+        private double[] times = new double[1 << 16];
+        private byte[] kinds = new byte[1 << 16];   // the pushed kind's ordinal, PEEK or POP
+        private int[] agents = new int[1 << 16];
+        private int[] generations = new int[1 << 16];
+        private int calls = 0;
+        private long hash = 0;   // of the order the recorded run popped events in
+
+        private void record(double time, byte kind, int agent, int generation) {
+            if (calls == kinds.length) {
+                times = Arrays.copyOf(times, 2 * calls);
+                kinds = Arrays.copyOf(kinds, 2 * calls);
+                agents = Arrays.copyOf(agents, 2 * calls);
+                generations = Arrays.copyOf(generations, 2 * calls);
+            }
+            times[calls] = time;
+            kinds[calls] = kind;
+            agents[calls] = agent;
+            generations[calls++] = generation;
+        }
+
+        @Override
+        public void push(double time, EventKind kind, int agent, int generation) {
+            record(time, (byte) kind.ordinal(), agent, generation);
+            heap.push(time, kind, agent, generation);
+        }
+
+        @Override
+        public void pop(Event into) {
+            record(0, POP, 0, 0);
+            heap.pop(into);
+            hash = hash(hash, into);
+        }
+
+        @Override
+        public void peek(Event into) {
+            record(0, PEEK, 0, 0);
+            heap.peek(into);
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return heap.isEmpty();
+        }
+
+        @Override
+        public int size() {
+            return heap.size();
+        }
+
+        // Make the recorded calls on another scheduler and return the hash of its pop order
+        long replay(Scheduler scheduler) {
+            Event e = new Event();
+            long replayed = 0;
+            for (int i = 0; i < calls; i++) {
+                if (kinds[i] == POP) {
+                    scheduler.pop(e);
+                    replayed = hash(replayed, e);
+                } else if (kinds[i] == PEEK) {
+                    scheduler.peek(e);
+                } else {
+                    scheduler.push(times[i], EventKind.VALUES[kinds[i]], agents[i], generations[i]);
+                }
+            }
+            return replayed;
+        }
+    }
+}
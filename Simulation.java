@@ -0,0 +1,402 @@
+import java.io.IOException;
+import java.util.*;
+import java.util.function.DoubleSupplier;
+import java.util.function.IntSupplier;
+import java.util.stream.IntStream;
+
+//======================================================================
+//* The simulation engine: the landscape, the agents and the event
+//* calendar, with no dependency on Swing or AWT.  It can be stepped one
+//* event at a time or run up to a given time; SimulationManager wraps
+//* it in a window for interactive runs.
+//======================================================================
+class Simulation {
+    private RandomStream rng;  // draws for the simulation itself; agents draw from their own streams
+
+    /*
+     * Parameters to control diseases and agent response to diseases
+     */
+    private static final int MAX_DISEASES = 12;
+    private final IntSupplier nextDiseaseGenomeLength = () -> {
+        return rng.nextInt(10) + 1;
+    };
+    private final DoubleSupplier nextDiseaseMetabolicPenalty = () -> {
+        return rng.nextDouble() + 1;
+    };
+    private final IntSupplier nextAgentImmuneLength = () -> {
+        return 50;
+    };
+
+    private double getNextMutateTime(RandomStream stream, double time) {
+        return time + uniform(stream, 3, 7);
+    }
+    private double getNextImmuneResponseTime(RandomStream stream, double time) {
+        return time + Math.abs(stream.nextGaussian()+1);
+    }
+
+    /*
+     * Agent parameters
+     */
+    private final IntSupplier nextAgentVision = () -> rng.nextInt(6) + 1;
+    private final DoubleSupplier nextAgentMetabolicRate = () -> uniform(rng, 1, 4);
+    private final DoubleSupplier nextAgentInitialWealth = () -> uniform(rng, 5, 25);
+    private final DoubleSupplier nextAgentMaxAge = () -> uniform(rng, 60, 100);
+
+    final AgentRegistry agents;
+    final Landscape landscape;
+    final int gridSize;
+    private final EventCalendar eventCalendar;
+    private final Census census = new Census(MAX_DISEASES);
+    private final DiseaseRegistry diseases = new DiseaseRegistry(MAX_DISEASES);
+    // Longest immune genome nextAgentImmuneLength may return: every agent's record has room
+    // for this many bits.  -DmaxImmuneLength raises it for longer genomes.
+    private static final int MAX_IMMUNE_LENGTH = Integer.getInteger("maxImmuneLength", 256);
+    final AgentStore store;  // the agents' state, off the heap
+    private final Event next = new Event();  // reused for every event polled from the calendar
+    private double time;  // the simulation time
+    private int maxVision = 0;  // largest vision of any agent so far
+
+    // Immunity cache counters of agents that have died; live agents keep their own
+    private long retiredCacheHits = 0;
+    private long retiredCacheMisses = 0;
+
+    private final int initialSeed;
+
+    private static double uniform(RandomStream stream, int a, int b) {
+        return (stream.nextDouble() * (b - a)) + a;
+    }
+
+    private static double exponential(RandomStream stream, double rate) {
+        return Math.log(1 - stream.nextDouble()) / (-rate);
+    }
+
+    private int rand01() {
+        return rng.nextInt(2);
+    }
+
+    private Genome randomGenome(int length) {
+        Genome g = new HeapGenome(length);
+        for (int i = 0; i < length; i++) {
+            if (rand01() == 1) {
+                g.flip(i);
+            }
+        }
+        return g;
+    }
+
+    public Simulation(int gridSize, int numAgents, int initialSeed) {
+        this(gridSize, numAgents, initialSeed, Scheduler.fromSystemProperty());
+    }
+
+    // Same, with the events kept in the given scheduler rather than the -Dscheduler one
+    Simulation(int gridSize, int numAgents, int initialSeed, Scheduler scheduler) {
+        this(gridSize, initialSeed, new RandomStream(initialSeed), MAX_IMMUNE_LENGTH, scheduler);
+        if (numAgents >= (gridSize * gridSize)) {
+            throw new IllegalArgumentException("Too many agents for the given gridSize!");
+        }
+
+        // Generate all the agents
+        IntStream.range(0, numAgents).forEach(i -> generateAgent());
+
+        // Generate all diseases that will exist
+        IntStream.range(0, MAX_DISEASES)
+                .forEach(i -> diseases.register(randomGenome(nextDiseaseGenomeLength.getAsInt()), nextDiseaseMetabolicPenalty.getAsDouble()));
+
+        // Infect each agent with a random disease
+        agents.forEach(a -> a.infectWith(diseases.get(rng.nextInt(diseases.size()))));
+    }
+
+    // An empty simulation at time 0, filled in by the public constructor or by readFrom()
+    private Simulation(int gridSize, int initialSeed, RandomStream rng, int maxImmuneLength, Scheduler scheduler) {
+        if (maxImmuneLength < 1) {
+            throw new IllegalArgumentException("maxImmuneLength must be positive, not " + maxImmuneLength);
+        }
+        this.initialSeed = initialSeed;
+        this.store = new AgentStore(diseases, maxImmuneLength);
+        this.rng = rng;
+        this.landscape = new Landscape(gridSize);
+
+        this.gridSize = gridSize;
+        this.agents = new AgentRegistry();
+        this.eventCalendar = new EventCalendar(agents, scheduler);
+
+        this.time = 0;   // initialize the simulation clock
+    }
+
+    // A free cell drawn uniformly from the landscape's free list, in one draw at any
+    // density.  Occupying it takes it off the list, so placing the whole population is
+    // a partial Fisher-Yates shuffle of the cells.
+    public int[] getNewUnoccupiedCell(int gridSize) {
+        int cell = landscape.getRandomFreeCell(rng);
+        return new int[]{landscape.rowOf(cell), landscape.colOf(cell)};
+    }
+
+    // simple accessor methods
+    public int getGridSize() {
+        return this.gridSize;
+    }
+
+    public double getTime() {
+        return this.time;
+    }
+
+    void setTime(double time) {
+        this.time = time;
+    }
+
+    int getMaxVision() {
+        return this.maxVision;
+    }
+
+    Census getCensus() {
+        return this.census;
+    }
+
+    EventCalendar getEventCalendar() {
+        return this.eventCalendar;
+    }
+
+    private Agent generateAgent() {
+        int handle = agents.nextHandle();
+        Agent a = new Agent(store, handle, agents.generationOf(handle), nextAgentVision.getAsInt(),
+                nextAgentMetabolicRate.getAsDouble(), nextAgentInitialWealth.getAsDouble(),
+                nextAgentMaxAge.getAsDouble(), this.time, randomGenome(nextAgentImmuneLength.getAsInt()), rng.split(), census);
+        agents.put(handle, a);
+        census.born();
+        maxVision = Math.max(maxVision, a.getVision());
+
+        int[] nextUnoccupied = getNewUnoccupiedCell(gridSize);
+
+        a.setRowCol(nextUnoccupied[0], nextUnoccupied[1]);
+        landscape.setOccupant(landscape.index(nextUnoccupied[0], nextUnoccupied[1]), a);
+
+        RandomStream stream = a.getRandom();
+        a.scheduleNewEvent(EventKind.MOVE, this.time + exponential(stream, 1));
+        a.scheduleNewEvent(EventKind.MUTATE, getNextMutateTime(stream, this.time));
+        a.scheduleNewEvent(EventKind.IMMUNE_RESPONSE, getNextImmuneResponseTime(stream, this.time));
+        a.scheduleNextEvent(eventCalendar);
+
+        return a;
+    }
+
+    //======================================================================
+    //* public boolean runUntil(double endTime)
+    //* Process every event scheduled before endTime.  Returns false if the
+    //* calendar ran out of events first.
+    //======================================================================
+    public boolean runUntil(double endTime) {
+        while (eventCalendar.peekTime() < endTime) {
+            step();
+        }
+        return eventCalendar.size() > 0;
+    }
+
+    //======================================================================
+    //* public boolean step()
+    //* Process the next event.  Returns false if there was none.
+    //======================================================================
+    public boolean step() {
+        long start = Instrumentation.ENABLED ? System.nanoTime() : 0;
+        if (!eventCalendar.poll(next)) {
+            return false;
+        }
+        this.time = next.getTime();
+
+        Agent agent = agents.get(next.getTarget());
+        if (Instrumentation.ENABLED) {
+            Instrumentation.LOOKUP.recordSince(start);
+            Instrumentation.CALENDAR_SIZE.record(eventCalendar.size());
+        }
+        if (handle(agent, next.getKind(), this.time)) {
+            // Add whatever the next event is to the global calendar
+            agent.scheduleNextEvent(eventCalendar);
+        } else {
+            replace(agent, this.time);
+        }
+        return true;
+    }
+
+    //======================================================================
+    //* boolean handle(Agent agent, EventKind kind, double time)
+    //* Carry out one event of an agent.  The clock and the calendar are
+    //* left alone: the agent's follow-up events go into its own pending
+    //* table, and the caller puts the next one on a calendar.  Returns
+    //* false if the agent died, in which case it is already off its cell,
+    //* and the caller must replace() it, which frees the cell.
+    //*
+    //* An event only touches cells, and agents standing on them, at most
+    //* getMaxVision() rows away from the agent, which is what lets the
+    //* partitioned engine run agents that are far apart concurrently.
+    //======================================================================
+    boolean handle(Agent agent, EventKind kind, double time) {
+        census.eventHandled(kind);
+        if (!Instrumentation.ENABLED) {
+            return dispatch(agent, kind, time);
+        }
+        long start = System.nanoTime();
+        boolean alive = dispatch(agent, kind, time);
+        Instrumentation.HANDLERS[kind.ordinal()].recordSince(start);
+        return alive;
+    }
+
+    private boolean dispatch(Agent agent, EventKind kind, double time) {
+        switch (kind) {
+            case MOVE: {
+                // Move
+                agent.move(landscape, time);
+                // Eat, deplete cell resources, compute wealth from resouces and metabolic rate
+                agent.collectResources(landscape, time);
+                scheduleAfterMove(agent, time);
+                return true;
+            }
+            case DEATH: {
+                agent.collectResources(landscape, time);
+                landscape.vacate(landscape.index(agent.getRow(), agent.getCol()));
+                return false;
+            }
+            case MUTATE: {
+                agent.randomMutateImmuneSystem();
+                agent.scheduleNewEvent(EventKind.MUTATE, getNextMutateTime(agent.getRandom(), time));
+                return true;
+            }
+            case IMMUNE_RESPONSE: {
+                agent.immuneResponse(true);
+                agent.scheduleNewEvent(EventKind.IMMUNE_RESPONSE, getNextImmuneResponseTime(agent.getRandom(), time));
+                return true;
+            }
+            default:
+                throw new IllegalArgumentException("Unknown event kind: " + kind);
+        }
+    }
+
+    // After an agent has moved and eaten, schedule its next move, or its death if
+    // it will starve before then
+    void scheduleAfterMove(Agent agent, double time) {
+        // Schedule Next Move
+        double tNext = time + exponential(agent.getRandom(), 1);
+
+        // Follow the agent's wealth in closed form to see if it starves before moving again
+        double deathTime = agent.starvationTime(landscape);
+        if (deathTime <= tNext) {
+            // DIE
+            agent.scheduleNewEvent(EventKind.DEATH, deathTime);
+        } else {
+            // If still living, schedule next move
+            agent.scheduleNewEvent(EventKind.MOVE, tNext);
+        }
+    }
+
+    // Retire an agent that died at the given time and put a new one in its place;
+    // the newcomer's first event goes on this simulation's calendar
+    void replace(Agent dead, double time) {
+        this.time = time;
+        retiredCacheHits += dead.getImmunityCache().getHits();
+        retiredCacheMisses += dead.getImmunityCache().getMisses();
+        census.died(dead.getInfections());
+        landscape.setOccupant(landscape.index(dead.getRow(), dead.getCol()), null);
+
+        // Releasing the handle bumps its generation, so any events still queued
+        // for this agent are dropped by the calendar when they come up
+        agents.release(dead.getID());
+        generateAgent();
+    }
+
+    //======================================================================
+    //* void writeTo(CheckpointWriter out)
+    //* Save the whole state of the simulation.  Only call it between runs
+    //* of an engine, when all events are on this simulation's calendar.
+    //* The calendar is not saved as such: every live agent has exactly one
+    //* event on it, so the calendar is emptied into the agents' pending
+    //* tables, which are saved, and refilled from them afterwards.  Events
+    //* of dead agents are dropped on the way, as poll() would have.
+    //======================================================================
+    void writeTo(CheckpointWriter out) throws IOException {
+        Event e = new Event();
+        while (eventCalendar.poll(e)) {
+            agents.get(e.getTarget()).scheduleNewEvent(e.getKind(), e.getTime());
+        }
+        try {
+            out.putInt(gridSize);
+            out.putInt(initialSeed);
+            out.putDouble(time);
+            out.putInt(maxVision);
+            out.putLong(retiredCacheHits);
+            out.putLong(retiredCacheMisses);
+            out.putLong(eventCalendar.getStaleSkipped());
+            rng.writeTo(out);
+            out.putInt(store.getMaxImmuneLength());
+            out.putInt(diseases.size());
+            for (int id = 0; id < diseases.size(); id++) {
+                Disease d = diseases.get(id);
+                out.putDouble(d.getMetabolicPenalty());
+                d.getGenome().writeTo(out);
+            }
+            for (EventKind kind : EventKind.VALUES) {
+                out.putLong(census.getEvents(kind));
+            }
+            landscape.writeTo(out);
+            agents.writeTo(out);
+        } finally {
+            agents.forEach(a -> a.scheduleNextEvent(eventCalendar));
+        }
+    }
+
+    //======================================================================
+    //* static Simulation readFrom(CheckpointReader in, Integer forkSeed)
+    //* Rebuild a simulation saved by writeTo().  With a null forkSeed it
+    //* continues exactly as the saved one would have.  Otherwise the
+    //* simulation and every agent get fresh random streams from forkSeed,
+    //* so that forks of one checkpoint are independent replications; the
+    //* fork reports forkSeed as its seed.
+    //======================================================================
+    static Simulation readFrom(CheckpointReader in, Integer forkSeed) throws IOException {
+        int gridSize = in.getCount(46340);  // the cell count must fit in an int
+        int initialSeed = in.getInt();
+        double time = in.getDouble();
+        int maxVision = in.getInt();
+        long retiredCacheHits = in.getLong();
+        long retiredCacheMisses = in.getLong();
+        long staleSkipped = in.getLong();
+        RandomStream rng = RandomStream.readFrom(in);
+
+        int maxImmuneLength = Math.max(MAX_IMMUNE_LENGTH, in.getInt());
+
+        Simulation s = forkSeed == null
+                ? new Simulation(gridSize, initialSeed, rng, maxImmuneLength, Scheduler.fromSystemProperty())
+                : new Simulation(gridSize, forkSeed, new RandomStream(forkSeed), maxImmuneLength,
+                        Scheduler.fromSystemProperty());
+        s.time = time;
+        s.maxVision = maxVision;
+        s.retiredCacheHits = retiredCacheHits;
+        s.retiredCacheMisses = retiredCacheMisses;
+        s.eventCalendar.addStaleSkipped(staleSkipped);
+
+        int diseaseCount = in.getCount(MAX_DISEASES);
+        for (int id = 0; id < diseaseCount; id++) {
+            double penalty = in.getDouble();
+            s.diseases.register(Genome.readFrom(in), penalty);
+        }
+        for (EventKind kind : EventKind.VALUES) {
+            s.census.eventsHandled(kind, in.getLong());
+        }
+        s.landscape.readFrom(in);
+        s.agents.readFrom(in, s.store, s.census, forkSeed == null ? null : s.rng);
+
+        for (Agent a : s.agents) {
+            s.landscape.setOccupant(s.landscape.index(a.getRow(), a.getCol()), a);
+            a.scheduleNextEvent(s.eventCalendar);
+        }
+        return s;
+    }
+
+    // Summary of the population at the current simulation time
+    public ReplicationResult getResult() {
+        assert landscape.isOccupancyConsistent(agents);
+        assert census.getInfected() == agents.stream().filter(Agent::isInfected).count();
+        long infected = census.getInfected();
+        long cacheHits = retiredCacheHits + agents.stream().mapToLong(a -> a.getImmunityCache().getHits()).sum();
+        long cacheMisses = retiredCacheMisses + agents.stream().mapToLong(a -> a.getImmunityCache().getMisses()).sum();
+        return new ReplicationResult(initialSeed, agents.size() - infected, infected, eventCalendar.getStaleSkipped(),
+                cacheHits, cacheMisses, -1);
+    }
+}
@@ -0,0 +1,30 @@
+import java.nio.ByteBuffer;
+
+//======================================================================
+//* An agent's immune genome, read and written in place in the agent's
+//* AgentStore record.
+//======================================================================
+final class StoredGenome extends Genome {
+    private final ByteBuffer record;
+    private final int base;
+
+    StoredGenome(AgentStore store, int agent) {
+        this.record = store.chunkOf(agent);
+        this.base = store.base(agent);
+    }
+
+    @Override
+    int length() {
+        return record.getInt(base + AgentStore.IMMUNE_LENGTH);
+    }
+
+    @Override
+    long word(int w) {
+        return record.getLong(base + AgentStore.genomeWord(w));
+    }
+
+    @Override
+    void setWord(int w, long bits) {
+        record.putLong(base + AgentStore.genomeWord(w), bits);
+    }
+}
@@ -0,0 +1,63 @@
+import java.util.Random;
+
+//======================================================================
+//* Check that a LandscapeSummary kept up to date for a long run still
+//* matches one built from scratch.  A simulation runs to a late time,
+//* with the summary updated at random intervals as frames would be, so
+//* that cells are depleted and regrow many times over; now and then a
+//* fresh summary is built at the same time, and every tile of every
+//* level must get exactly the same color and resources from both.
+//* Exits with status 1 on the first difference.  Run with
+//*   java SummaryCheck [gridSize numAgents time]
+//======================================================================
+class SummaryCheck {
+    private static final int CHECKS = 10;
+
+    public static void main(String[] args) {
+        int gridSize = args.length >= 3 ? Integer.parseInt(args[0]) : 100;
+        int numAgents = args.length >= 3 ? Integer.parseInt(args[1]) : 2500;
+        double endTime = args.length >= 3 ? Double.parseDouble(args[2]) : 1000;
+
+        Simulation simulation = new Simulation(gridSize, numAgents, 8675309);
+        Engine engine = Engine.fromSystemProperty(simulation);
+        LandscapeSummary summary = new LandscapeSummary(simulation.landscape, simulation.agents,
+                simulation.getCensus(), true);
+        double time = 0;   // of the last frame; the last event is earlier
+        summary.update(time);
+        Random rng = new Random(42);
+        long updates = 0;
+        for (int check = 1; check <= CHECKS; check++) {
+            double checkTime = endTime * check / CHECKS;
+            while (time < checkTime) {
+                time = Math.min(checkTime, time + 0.01 + rng.nextDouble() * 0.5);
+                engine.runUntil(time);
+                summary.update(time);
+                updates++;
+            }
+
+            // This drains the change logs too, but the update just now left them empty
+            LandscapeSummary fresh = new LandscapeSummary(simulation.landscape, simulation.agents,
+                    simulation.getCensus(), true);
+            fresh.update(time);
+            for (int level = 0; level < summary.getLevels(); level++) {
+                int tiles = LandscapeSummary.tilesAcross(gridSize, level);
+                View view = new View(level, false, 0, 0, tiles, tiles);
+                int[] kept = new int[tiles * tiles];
+                int[] rebuilt = new int[tiles * tiles];
+                summary.getColors(view, kept);
+                fresh.getColors(view, rebuilt);
+                for (int i = 0; i < kept.length; i++) {
+                    if (kept[i] != rebuilt[i]
+                            || level > 0 && summary.getResources(level, i) != fresh.getResources(level, i)) {
+                        System.out.println("MISMATCH at time " + time + ", level " + level
+                                + ", tile " + i + ": kept " + Integer.toHexString(kept[i]) + " with resources "
+                                + summary.getResources(level, i) + ", rebuilt " + Integer.toHexString(rebuilt[i])
+                                + " with " + fresh.getResources(level, i));
+                        System.exit(1);
+                    }
+                }
+            }
+        }
+        System.out.println("Summary matches a rebuilt one after " + updates + " updates to time " + time);
+    }
+}
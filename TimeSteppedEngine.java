@@ -0,0 +1,186 @@
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+//======================================================================
+//* Synchronous engine with a fixed tick.  Agents keep their own clocks
+//* in their pending tables, but instead of taking events off a calendar
+//* one at a time, every tick does, for all agents together, whatever
+//* each of them has due before the tick ends.  A tick runs in phases:
+//*   1. deaths, serially, since births draw from the simulation's stream
+//*   2. move proposals, in parallel: each moving agent picks a cell as
+//*      if no other agent were moving this tick
+//*   3. conflicts, serially: of the agents that picked the same cell,
+//*      the one with the highest random priority gets it
+//*   4. the moves and the contacts they make, serially, since contacts
+//*      change the neighbours
+//*   5. resource collection and the next move or death, in parallel
+//*   6. mutations and immune responses, in parallel
+//* Each action still happens at its agent's own event time, so only the
+//* order of actions within a tick differs from the serial engine.
+//======================================================================
+class TimeSteppedEngine implements Engine {
+    static final double DEFAULT_TICK = 0.1;
+
+    private final Simulation simulation;
+    private final double tick;
+    private final int threads;
+
+    // Per moving agent, indexed by its position in movers
+    private int[] movers = new int[0];
+    private double[] moveTimes = new double[0];
+    private int[] proposals = new int[0];
+    private long[] priorities = new long[0];
+    private int moverCount;
+
+    private int[] claims;  // per cell, the mover that has claimed it this tick, or -1
+    private int[] due = new int[0];  // handles of agents with a given kind of event due
+    private int dueCount;
+
+    TimeSteppedEngine(Simulation simulation, double tick, int threads) {
+        this.simulation = simulation;
+        this.tick = tick;
+        this.threads = threads;
+        int cells = simulation.getGridSize() * simulation.getGridSize();
+        this.claims = new int[cells];
+        Arrays.fill(claims, -1);
+    }
+
+    @Override
+    public boolean runUntil(double endTime) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            takeCalendar();
+            double time = simulation.getTime();
+            while (time < endTime) {
+                double tickEnd = Math.min(time + tick, endTime);
+                runDeaths(tickEnd);
+                runMoves(pool, tickEnd);
+                runAgentLocal(pool, EventKind.MUTATE, tickEnd);
+                runAgentLocal(pool, EventKind.IMMUNE_RESPONSE, tickEnd);
+                time = tickEnd;
+            }
+            simulation.setTime(time);
+
+            // Hand the agents' clocks back to the calendar for the serial engine
+            EventCalendar calendar = simulation.getEventCalendar();
+            simulation.agents.forEach(a -> a.scheduleNextEvent(calendar));
+            return simulation.getEventCalendar().size() > 0;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // Move every event on the simulation's calendar back into its agent's pending table
+    private void takeCalendar() {
+        EventCalendar calendar = simulation.getEventCalendar();
+        Event e = new Event();
+        while (calendar.poll(e)) {
+            simulation.agents.get(e.getTarget()).scheduleNewEvent(e.getKind(), e.getTime());
+        }
+    }
+
+    private void runDeaths(double tickEnd) {
+        collectDue(EventKind.DEATH, tickEnd);
+        for (int i = 0; i < dueCount; i++) {
+            Agent a = simulation.agents.get(due[i]);
+            double time = a.getPendingTime(EventKind.DEATH);
+            a.clearPending(EventKind.DEATH);
+            simulation.handle(a, EventKind.DEATH, time);
+            simulation.replace(a, time);
+        }
+        // The newcomers' first events went onto the calendar
+        takeCalendar();
+    }
+
+    private void runMoves(ForkJoinPool pool, double tickEnd) {
+        collectDue(EventKind.MOVE, tickEnd);
+        moverCount = dueCount;
+        if (movers.length < moverCount) {
+            movers = new int[due.length];
+            moveTimes = new double[due.length];
+            proposals = new int[due.length];
+            priorities = new long[due.length];
+        }
+        for (int i = 0; i < moverCount; i++) {
+            Agent a = simulation.agents.get(due[i]);
+            movers[i] = due[i];
+            moveTimes[i] = a.getPendingTime(EventKind.MOVE);
+            a.clearPending(EventKind.MOVE);
+            simulation.getCensus().eventHandled(EventKind.MOVE);
+        }
+
+        Landscape landscape = simulation.landscape;
+        inParallel(pool, moverCount, i -> {
+            Agent a = simulation.agents.get(movers[i]);
+            proposals[i] = a.chooseCell(landscape, moveTimes[i]);
+            priorities[i] = a.getRandom().nextLong();
+        });
+
+        for (int i = 0; i < moverCount; i++) {
+            int cell = proposals[i];
+            if (cell >= 0 && (claims[cell] < 0 || priorities[i] > priorities[claims[cell]])) {
+                claims[cell] = i;
+            }
+        }
+        for (int i = 0; i < moverCount; i++) {
+            int cell = proposals[i];
+            if (cell >= 0 && claims[cell] == i) {
+                Agent a = simulation.agents.get(movers[i]);
+                a.moveTo(landscape, cell);
+                a.contactNeighbours(landscape);
+            }
+        }
+        for (int i = 0; i < moverCount; i++) {
+            if (proposals[i] >= 0) {
+                claims[proposals[i]] = -1;
+            }
+        }
+
+        // Every agent eats from its own cell, so this can run in parallel
+        inParallel(pool, moverCount, i -> {
+            Agent a = simulation.agents.get(movers[i]);
+            a.collectResources(landscape, moveTimes[i]);
+            simulation.scheduleAfterMove(a, moveTimes[i]);
+        });
+    }
+
+    // Events that only change their own agent
+    private void runAgentLocal(ForkJoinPool pool, EventKind kind, double tickEnd) {
+        collectDue(kind, tickEnd);
+        inParallel(pool, dueCount, i -> {
+            Agent a = simulation.agents.get(due[i]);
+            double time = a.getPendingTime(kind);
+            a.clearPending(kind);
+            simulation.handle(a, kind, time);
+        });
+    }
+
+    // Fill due with the handles of the agents with an event of this kind before tickEnd
+    private void collectDue(EventKind kind, double tickEnd) {
+        AgentRegistry agents = simulation.agents;
+        if (due.length < agents.capacity()) {
+            due = new int[agents.capacity()];
+        }
+        dueCount = 0;
+        for (int h = 0; h < agents.capacity(); h++) {
+            Agent a = agents.get(h);
+            if (a != null && a.getPendingTime(kind) < tickEnd) {
+                due[dueCount++] = h;
+            }
+        }
+    }
+
+    private static void inParallel(ForkJoinPool pool, int count, IntConsumer body) {
+        try {
+            pool.submit(() -> IntStream.range(0, count).parallel().forEach(body)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running a phase", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Phase failed", e.getCause());
+        }
+    }
+}
@@ -0,0 +1,56 @@
+//======================================================================
+//* The part of the landscape the canvas is showing: a block of tiles
+//* of one level of the LandscapeSummary pyramid, and whether agents are
+//* drawn one by one on top of it (only at level 0) or are folded into
+//* the tile colors.  The canvas hands a new View to the FrameExchanger
+//* whenever it scrolls or zooms, and frames carry only that block.
+//======================================================================
+final class View {
+    private final int level;
+    private final boolean detailed;
+    private final int row;   // of the first tile, in tiles of the level
+    private final int col;
+    private final int rows;
+    private final int cols;
+
+    View(int level, boolean detailed, int row, int col, int rows, int cols) {
+        if (detailed && level != 0) {
+            throw new IllegalArgumentException("Agents are only drawn apart at level 0, not " + level);
+        }
+        this.level = level;
+        this.detailed = detailed;
+        this.row = row;
+        this.col = col;
+        this.rows = rows;
+        this.cols = cols;
+    }
+
+    int getLevel() {
+        return level;
+    }
+
+    boolean isDetailed() {
+        return detailed;
+    }
+
+    int getRow() {
+        return row;
+    }
+
+    int getCol() {
+        return col;
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    int getCols() {
+        return cols;
+    }
+
+    boolean sameAs(View other) {
+        return other != null && level == other.level && detailed == other.detailed
+                && row == other.row && col == other.col && rows == other.rows && cols == other.cols;
+    }
+}